@@ -12,6 +12,23 @@ repositories {
     maven { url = uri("https://jitpack.io") }
 }
 
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+
+// The tests render the benchmark scenes with the same stand-ins
+sourceSets.test {
+    compileClasspath += jmh.output
+    runtimeClasspath += jmh.output
+}
+
+configurations.testImplementation {
+    extendsFrom(configurations[jmh.implementationConfigurationName])
+}
+
 dependencies {
     implementation("de.bluecolored:bluemap-core:5.15")
     implementation("de.bluecolored:bluemap-common:5.15")
@@ -21,6 +38,12 @@ dependencies {
 
     compileOnly("org.projectlombok:lombok:1.18.30")
     annotationProcessor("org.projectlombok:lombok:1.18.30")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+
+    testImplementation(libs.junit.jupiter)
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 // Apply a specific Java toolchain to ease working on different environments.
@@ -30,6 +53,25 @@ java {
     }
 }
 
+// For the optional Vector API box face kernel, BlueMap's JVM only uses it when started with the
+// same flag. -Pvector runs the tests, benchmarks and tools that way too.
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+if (providers.gradleProperty("vector").isPresent) {
+    tasks.withType<JavaExec>().configureEach {
+        jvmArgs("--add-modules", "jdk.incubator.vector")
+    }
+    tasks.withType<Test>().configureEach {
+        jvmArgs("--add-modules", "jdk.incubator.vector")
+    }
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
 tasks.processResources {
     val projectVersion = project.version.toString()
     filesMatching("bluemap.addon.json") {
@@ -37,6 +79,55 @@ tasks.processResources {
     }
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the renderer benchmarks, extra JMH options can be passed with -PjmhArgs=\"...\""
+
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+
+    val resultFile = layout.buildDirectory.file("reports/jmh/results.json")
+    val extraArgs = providers.gradleProperty("jmhArgs")
+        .map { it.split(" ").filter(String::isNotBlank) }
+        .orElse(emptyList())
+
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-prof", "gc", "-rf", "json", "-rff", resultFile.get().asFile.absolutePath) + extraArgs.get()
+    })
+    doFirst {
+        resultFile.get().asFile.parentFile.mkdirs()
+    }
+}
+
+tasks.register<JavaExec>("jmhScaling") {
+    group = "verification"
+    description = "Runs the renderers on 1 up to all cores and prints the scaling efficiency, -PscalingArgs=\"<threads> <scene>\" sets the maximum thread count and the scene"
+
+    classpath = jmh.runtimeClasspath
+    mainClass = "eu.zhincore.bluemapdynamictrees.benchmark.ScalingBenchmark"
+
+    val extraArgs = providers.gradleProperty("scalingArgs")
+        .map { it.split(" ").filter(String::isNotBlank) }
+        .orElse(emptyList())
+
+    argumentProviders.add(CommandLineArgumentProvider { extraArgs.get() })
+}
+
+tasks.register<JavaExec>("modelFootprint") {
+    group = "verification"
+    description = "Loads a generated pack of tree models and prints the heap the Dynamic Trees models keep, -PfootprintArgs=\"<species> <loads>\" sets the species and the loads measured at once"
+
+    classpath = jmh.runtimeClasspath
+    mainClass = "eu.zhincore.bluemapdynamictrees.benchmark.ModelFootprint"
+    jvmArgs("-XX:+UseSerialGC")
+
+    val extraArgs = providers.gradleProperty("footprintArgs")
+        .map { it.split(" ").filter(String::isNotBlank) }
+        .orElse(emptyList())
+
+    argumentProviders.add(CommandLineArgumentProvider { extraArgs.get() })
+}
+
 tasks.build {
     dependsOn(tasks.jar)
 }
@@ -0,0 +1,133 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import com.google.gson.stream.JsonReader;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import eu.zhincore.bluemapdynamictrees.config.AddonConfig;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPackFactory;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+
+/**
+ * In-memory stand-ins for the BlueMap objects the renderers are constructed with.
+ */
+public final class Fixtures {
+  public static final String BRANCH_MODEL = """
+      {
+        "loader": "dynamictrees:branch",
+        "textures": {
+          "bark": "minecraft:block/oak_log",
+          "rings": "minecraft:block/oak_log_top"
+        }
+      }
+      """;
+
+  public static final String ROOT_MODEL = """
+      {
+        "loader": "dynamictrees:surface_root",
+        "textures": {
+          "bark": "minecraft:block/oak_log"
+        }
+      }
+      """;
+
+  private Fixtures() {
+  }
+
+  public static BranchModelExtension model(String json) {
+    try (JsonReader reader = new JsonReader(new StringReader(json))) {
+      return BranchModelExtension.read(reader, ResourcePath::new);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Loads an addon config using the profile for every map, from a config folder that is deleted
+   * again right after.
+   */
+  public static void useProfile(RenderProfile profile) {
+    try {
+      Path configFolder = Files.createTempDirectory("bluemap-dynamictrees");
+      Path file = configFolder.resolve(AddonConfig.FILE_NAME);
+      Files.writeString(file, "default {\n"
+          + "  detail: " + profile.detail().name().toLowerCase(Locale.ROOT) + "\n"
+          + "  sleeve-min-radius: " + profile.sleeveMinRadius() + "\n"
+          + "  trunk-min-radius: " + profile.trunkMinRadius() + "\n"
+          + "  triangle-budget: " + profile.triangleBudget() + "\n"
+          + "  merge-trunks: " + profile.mergeTrunks() + "\n"
+          + "  leaves: " + profile.leaves().name().toLowerCase(Locale.ROOT) + "\n"
+          + "  reference: " + profile.reference() + "\n"
+          + "}\n");
+      AddonConfig.load(configFolder);
+      Files.delete(file);
+      Files.delete(configFolder);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** An empty pack with the branch and root blocks of the scene registered. */
+  public static DynamicTreesPack pack(TreeScene scene) {
+    DynamicTreesPack pack = DynamicTreesPackFactory.INSTANCE.create(null);
+    registerBlocks(pack, scene);
+    return pack;
+  }
+
+  /**
+   * Registers the branch and root blocks of the scene with the {@link #BRANCH_MODEL} and
+   * {@link #ROOT_MODEL} like baking the pack does.
+   */
+  public static void registerBlocks(DynamicTreesPack pack, TreeScene scene) {
+    BranchModelExtension branchModel = model(BRANCH_MODEL);
+    BranchModelExtension rootModel = model(ROOT_MODEL);
+    for (TreeScene.Target target : scene.getTargets()) {
+      boolean root = target.kind() == TreeScene.Kind.ROOT;
+      pack.getBlockIndex().register(scene.get(target.x(), target.y(), target.z()).getId(),
+          root ? LoaderType.ROOT : LoaderType.BRANCH, root ? rootModel : branchModel);
+    }
+  }
+
+  /**
+   * Render settings with every option at its zero value, this keeps the stand-in independent of
+   * settings added in later BlueMap versions.
+   */
+  public static RenderSettings renderSettings() {
+    return (RenderSettings) Proxy.newProxyInstance(RenderSettings.class.getClassLoader(),
+        new Class<?>[] { RenderSettings.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "RenderSettings(stand-in)";
+            default:
+              return zeroValue(method.getReturnType());
+          }
+        });
+  }
+
+  private static Object zeroValue(Class<?> type) {
+    if (type == boolean.class)
+      return false;
+    if (type == int.class)
+      return 0;
+    if (type == long.class)
+      return 0L;
+    if (type == float.class)
+      return 0f;
+    if (type == double.class)
+      return 0d;
+    return null;
+  }
+}
@@ -0,0 +1,68 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import eu.zhincore.bluemapdynamictrees.render.TreeNeighborhood;
+
+/**
+ * {@link TreeNeighborhood} stand-in reading blocks and light from a {@link TreeScene}.
+ */
+public final class InMemoryNeighborhood implements TreeNeighborhood {
+  private final TreeScene scene;
+  private int x, y, z;
+
+  public InMemoryNeighborhood(TreeScene scene) {
+    this.scene = scene;
+  }
+
+  public InMemoryNeighborhood moveTo(int x, int y, int z) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    return this;
+  }
+
+  @Override
+  public int getX() {
+    return x;
+  }
+
+  @Override
+  public int getY() {
+    return y;
+  }
+
+  @Override
+  public int getZ() {
+    return z;
+  }
+
+  @Override
+  public Object getChunk() {
+    return scene;
+  }
+
+  @Override
+  public BlockState getBlockState() {
+    return scene.get(x, y, z);
+  }
+
+  @Override
+  public BlockState getBlockStateAt(int x, int y, int z) {
+    return scene.get(x, y, z);
+  }
+
+  @Override
+  public int getPackedLight(int dx, int dy, int dz) {
+    return scene.getPackedLight(x + dx, y + dy, z + dz);
+  }
+
+  @Override
+  public boolean isCulling(int dx, int dy, int dz) {
+    return scene.isCulling(x + dx, y + dy, z + dz);
+  }
+
+  @Override
+  public boolean isRemoveIfCave() {
+    return false;
+  }
+}
@@ -0,0 +1,120 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPackFactory;
+
+/**
+ * Writes a resource pack with the models of a modpack's trees, loads it and reports the heap the
+ * loaded Dynamic Trees models keep. Every species gets a branch, a stripped branch and a surface
+ * root model with its own bark and rings textures plus the vanilla-style models of its logs, planks
+ * and saplings, which are read but not kept.
+ *
+ * <p>
+ * The pack is loaded several times and the heap is compared after garbage collections, the numbers
+ * are most stable with {@code -XX:+UseSerialGC}. Arguments: the species (default 200) and the loads
+ * measured at once (default 20).
+ */
+public final class ModelFootprint {
+  private static final String NAMESPACE = "footprint";
+  private static final String[] FILLER_MODELS = { "log", "wood", "planks", "sapling", "slab",
+      "stairs" };
+
+  private ModelFootprint() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    int species = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int loads = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 20;
+
+    Path root = Files.createTempDirectory("dt-footprint");
+    try {
+      writePack(root, species);
+
+      // Warm up class loading and the JIT before measuring
+      load(root);
+
+      long before = usedHeap();
+      DynamicTreesPack[] packs = new DynamicTreesPack[loads];
+      for (int i = 0; i < loads; i++) {
+        packs[i] = load(root);
+      }
+      long after = usedHeap();
+      Reference.reachabilityFence(packs);
+
+      int models = packs[0].getModels().values().size();
+      long perPack = (after - before) / loads;
+      System.out.printf("%d species: %d Dynamic Trees models kept of %d model files%n", species,
+          models, species * (3 + FILLER_MODELS.length));
+      System.out.printf("%d bytes per loaded pack, %d bytes per model, over %d loads%n", perPack,
+          perPack / Math.max(1, models), loads);
+    } finally {
+      try (Stream<Path> files = Files.walk(root)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private static DynamicTreesPack load(Path root) throws IOException {
+    DynamicTreesPack pack = DynamicTreesPackFactory.INSTANCE.create(null);
+    pack.loadResourcesFromPath(root);
+    return pack;
+  }
+
+  private static void writePack(Path root, int species) throws IOException {
+    Path models = root.resolve("assets").resolve(NAMESPACE).resolve("models").resolve("block");
+    Files.createDirectories(models);
+
+    for (int i = 0; i < species; i++) {
+      String log = NAMESPACE + ":block/species" + i + "_log";
+      Files.writeString(models.resolve("species" + i + "_branch.json"),
+          branchModel("dynamictrees:branch", log, log + "_top"));
+      Files.writeString(models.resolve("stripped_species" + i + "_branch.json"),
+          branchModel("dynamictrees:branch", "minecraft:block/stripped_oak_log", log + "_top"));
+      Files.writeString(models.resolve("species" + i + "_root.json"),
+          branchModel("dynamictrees:surface_root", log, null));
+
+      for (String filler : FILLER_MODELS) {
+        Files.writeString(models.resolve("species" + i + "_" + filler + ".json"), """
+            {
+              "parent": "minecraft:block/cube_column",
+              "textures": {
+                "end": "%s_top",
+                "side": "%s"
+              }
+            }
+            """.formatted(log, log));
+      }
+    }
+  }
+
+  private static String branchModel(String loader, String bark, String rings) {
+    return """
+        {
+          "loader": "%s",
+          "textures": {
+            "particle": "%s",
+            "bark": "%s"%s
+          }
+        }
+        """.formatted(loader, bark, bark,
+        rings == null ? "" : ",\n        \"rings\": \"" + rings + "\"");
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,149 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.ArrayTileModel;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModel;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.render.AbstractDynamicTreeRenderer;
+import eu.zhincore.bluemapdynamictrees.render.BranchModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.SurfaceRootModelRenderer;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+
+/**
+ * Renders the blocks of a {@link TreeScene} one at a time through the entry point BlueMap calls,
+ * with a {@link SceneBlockNeighborhood} and one renderer per loader type like the ones the addon
+ * binds to Dynamic Trees block states, the model is looked up by block. The score is ns/block, run with
+ * {@code -prof gc} for the allocations per block ({@code gc.alloc.rate.norm}). The triangles and
+ * blocks counters give the emitted triangles per block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RendererBenchmark {
+  private static final int MAX_TRIANGLES = 1 << 16;
+
+  @Param({ "trunk", "thickTrunk", "fork", "twigRing", "leafTwig", "surfaceRoot", "forest" })
+  public String scene;
+
+  /**
+   * {@code reference} bakes the geometry of every block again instead of taking it from the cache,
+   * which measures building templates from boxes. {@code merged} is the full profile with
+   * {@code merge-trunks}.
+   */
+  @Param({ "full", "merged", "reference" })
+  public String profile;
+
+  private SceneBlockNeighborhood neighborhood;
+  private TreeScene.Target[] targets;
+  private AbstractDynamicTreeRenderer[] renderers;
+  private TileModel tileModel;
+  private TileModelView blockModel;
+  private final Color color = new Color();
+  private int cursor;
+
+  private long totalBlocks;
+  private long totalTriangles;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+    public long blocks;
+    public long triangles;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      blocks = 0;
+      triangles = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    TreeScene treeScene = TreeScene.create(scene);
+    List<TreeScene.Target> sceneTargets = treeScene.getTargets();
+    switch (profile) {
+      case "reference":
+        Fixtures.useProfile(new RenderProfile(RenderProfile.Detail.FULL, 3, 3, 0, false,
+            RenderProfile.Leaves.CULLED, true));
+        break;
+      case "merged":
+        Fixtures.useProfile(new RenderProfile(RenderProfile.Detail.FULL, 3, 3, 0, true,
+            RenderProfile.Leaves.VANILLA, false));
+        break;
+      default:
+        Fixtures.useProfile(RenderProfile.FULL);
+        break;
+    }
+
+    DynamicTreesPack pack = Fixtures.pack(treeScene);
+    TextureGallery textureGallery = new TextureGallery();
+    RenderSettings renderSettings = Fixtures.renderSettings();
+
+    BranchModelRenderer branchRenderer =
+        new BranchModelRenderer(pack, textureGallery, renderSettings);
+    SurfaceRootModelRenderer rootRenderer =
+        new SurfaceRootModelRenderer(pack, textureGallery, renderSettings);
+
+    neighborhood = new SceneBlockNeighborhood(treeScene, renderSettings);
+    targets = sceneTargets.toArray(TreeScene.Target[]::new);
+    renderers = new AbstractDynamicTreeRenderer[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      renderers[i] = targets[i].kind() == TreeScene.Kind.ROOT ? rootRenderer : branchRenderer;
+    }
+
+    tileModel = new ArrayTileModel(MAX_TRIANGLES + 1024);
+    blockModel = new TileModelView(tileModel);
+  }
+
+  @Benchmark
+  public void renderBlock(Counters counters) {
+    int i = cursor;
+    cursor = i + 1 == targets.length ? 0 : i + 1;
+
+    if (tileModel.size() > MAX_TRIANGLES) {
+      tileModel.clear();
+    }
+
+    TreeScene.Target target = targets[i];
+    int before = tileModel.size();
+
+    blockModel.initialize();
+    // Blocks with a single model never look at the variant
+    renderers[i].render(neighborhood.moveTo(target.x(), target.y(), target.z()), null,
+        blockModel, color);
+
+    int triangles = tileModel.size() - before;
+    counters.blocks++;
+    counters.triangles += triangles;
+    totalBlocks++;
+    totalTriangles += triangles;
+  }
+
+  @TearDown(Level.Trial)
+  public void report() {
+    System.out.printf("%n%s: %.2f triangles/block over %d blocks%n", scene,
+        (double) totalTriangles / Math.max(1, totalBlocks), totalBlocks);
+  }
+}
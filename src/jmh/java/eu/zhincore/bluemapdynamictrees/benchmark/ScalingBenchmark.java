@@ -0,0 +1,154 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.ArrayTileModel;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModel;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.render.AbstractDynamicTreeRenderer;
+import eu.zhincore.bluemapdynamictrees.render.BranchModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.SurfaceRootModelRenderer;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+
+/**
+ * Renders a {@link TreeScene} on several threads at once. Like BlueMap's render threads every thread
+ * has its own renderers, while the resource pack, texture gallery, geometry caches and metrics are
+ * shared. The score is blocks/us over all threads, {@link #main} runs it from one thread up to all
+ * cores and prints the scaling efficiency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+  private static final int MAX_TRIANGLES = 1 << 16;
+
+  @State(Scope.Benchmark)
+  public static class Shared {
+    @Param({ "forest" })
+    public String scene;
+
+    TreeScene treeScene;
+    DynamicTreesPack pack;
+    TextureGallery textureGallery;
+    RenderSettings renderSettings;
+    BranchModelExtension branchModel;
+    BranchModelExtension rootModel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      treeScene = TreeScene.create(scene);
+      pack = Fixtures.pack(treeScene);
+      textureGallery = new TextureGallery();
+      renderSettings = Fixtures.renderSettings();
+      branchModel = Fixtures.model(Fixtures.BRANCH_MODEL);
+      rootModel = Fixtures.model(Fixtures.ROOT_MODEL);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Worker {
+    private InMemoryNeighborhood neighborhood;
+    private TreeScene.Target[] targets;
+    private AbstractDynamicTreeRenderer[] renderers;
+    private BranchModelExtension[] models;
+    private TileModel tileModel;
+    private TileModelView blockModel;
+    private final Color color = new Color();
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup(Shared shared) {
+      BranchModelRenderer branchRenderer =
+          new BranchModelRenderer(shared.pack, shared.textureGallery, shared.renderSettings);
+      SurfaceRootModelRenderer rootRenderer =
+          new SurfaceRootModelRenderer(shared.pack, shared.textureGallery, shared.renderSettings);
+
+      neighborhood = new InMemoryNeighborhood(shared.treeScene);
+      targets = shared.treeScene.getTargets().toArray(TreeScene.Target[]::new);
+      renderers = new AbstractDynamicTreeRenderer[targets.length];
+      models = new BranchModelExtension[targets.length];
+      for (int i = 0; i < targets.length; i++) {
+        boolean root = targets[i].kind() == TreeScene.Kind.ROOT;
+        renderers[i] = root ? rootRenderer : branchRenderer;
+        models[i] = root ? shared.rootModel : shared.branchModel;
+      }
+
+      tileModel = new ArrayTileModel(MAX_TRIANGLES + 1024);
+      blockModel = new TileModelView(tileModel);
+    }
+  }
+
+  @Benchmark
+  public int renderBlock(Worker worker) {
+    int i = worker.cursor;
+    worker.cursor = i + 1 == worker.targets.length ? 0 : i + 1;
+
+    if (worker.tileModel.size() > MAX_TRIANGLES) {
+      worker.tileModel.clear();
+    }
+
+    TreeScene.Target target = worker.targets[i];
+    worker.blockModel.initialize();
+    worker.renderers[i].render(worker.neighborhood.moveTo(target.x(), target.y(), target.z()),
+        worker.models[i], worker.blockModel, worker.color);
+    return worker.tileModel.size();
+  }
+
+  /**
+   * Runs the benchmark with 1, 2, 4, ... threads up to the given count (all cores by default) and
+   * prints the throughput, the speedup over one thread and the efficiency (speedup per thread).
+   */
+  public static void main(String[] args) throws RunnerException {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+        : Runtime.getRuntime().availableProcessors();
+    String scene = args.length > 1 ? args[1] : "forest";
+
+    List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(maxThreads);
+
+    List<double[]> results = new ArrayList<>();
+    for (int threads : threadCounts) {
+      double score = new Runner(new OptionsBuilder()
+          .include(ScalingBenchmark.class.getName() + ".renderBlock")
+          .param("scene", scene)
+          .threads(threads)
+          .shouldFailOnError(true)
+          .build()).runSingle().getPrimaryResult().getScore();
+      results.add(new double[] { threads, score });
+    }
+
+    double single = results.get(0)[1];
+    System.out.printf("%n%s scaling%n%8s %14s %8s %11s%n", scene, "threads", "blocks/us",
+        "speedup", "efficiency");
+    for (double[] result : results) {
+      double speedup = result[1] / single;
+      System.out.printf("%8d %14.3f %8.2f %10.0f%%%n", (int) result[0], result[1], speedup,
+          speedup / result[0] * 100);
+    }
+  }
+}
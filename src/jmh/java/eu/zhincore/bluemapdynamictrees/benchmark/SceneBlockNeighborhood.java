@@ -0,0 +1,186 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.lang.reflect.Proxy;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.world.BlockProperties;
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.LightData;
+import de.bluecolored.bluemap.core.world.World;
+import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
+import de.bluecolored.bluemap.core.world.block.ExtendedBlock;
+
+/**
+ * {@link BlockNeighborhood} stand-in reading blocks, light and culling from a {@link TreeScene}, so
+ * benchmarks can call the renderers the way BlueMap does. Every getter the renderers use but the
+ * chunk is overridden, the resource pack and dimension BlueMap's implementation reads them from
+ * stay unset.
+ *
+ * <p>
+ * The whole scene is a single {@link Chunk}. The world only hands out that chunk and is a proxy
+ * like the render settings, BlueMap's block looks its chunk up there and the renderers ask it when
+ * they read a block of another chunk.
+ */
+public final class SceneBlockNeighborhood extends BlockNeighborhood {
+  private static final BlockProperties CULLING =
+      BlockProperties.builder().culling(true).occluding(true).build();
+  private static final BlockProperties TRANSPARENT =
+      BlockProperties.builder().culling(false).occluding(false).build();
+
+  private final TreeScene scene;
+  private final SceneChunk chunk;
+  private final World world;
+  private final Neighbor neighbor;
+  private int x, y, z;
+
+  public SceneBlockNeighborhood(TreeScene scene, RenderSettings renderSettings) {
+    this(scene, new SceneChunk(scene), renderSettings);
+  }
+
+  private SceneBlockNeighborhood(TreeScene scene, SceneChunk chunk,
+      RenderSettings renderSettings) {
+    this(scene, chunk, world(chunk), renderSettings);
+  }
+
+  private SceneBlockNeighborhood(TreeScene scene, SceneChunk chunk, World world,
+      RenderSettings renderSettings) {
+    super(null, renderSettings, world, null);
+    this.scene = scene;
+    this.chunk = chunk;
+    this.world = world;
+    this.neighbor = new Neighbor(scene, renderSettings, world);
+  }
+
+  public SceneBlockNeighborhood moveTo(int x, int y, int z) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    return this;
+  }
+
+  @Override
+  public World getWorld() {
+    return world;
+  }
+
+  @Override
+  public int getX() {
+    return x;
+  }
+
+  @Override
+  public int getY() {
+    return y;
+  }
+
+  @Override
+  public int getZ() {
+    return z;
+  }
+
+  @Override
+  public BlockState getBlockState() {
+    return scene.get(x, y, z);
+  }
+
+  @Override
+  public boolean isRemoveIfCave() {
+    return false;
+  }
+
+  @Override
+  public ExtendedBlock getNeighborBlock(int dx, int dy, int dz) {
+    return neighbor.moveTo(x + dx, y + dy, z + dz);
+  }
+
+  private static World world(SceneChunk chunk) {
+    return (World) Proxy.newProxyInstance(World.class.getClassLoader(),
+        new Class<?>[] { World.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getChunkAtBlock":
+            case "getChunk":
+              return chunk;
+            case "getId":
+            case "getName":
+              return chunk.scene.getName();
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "World(" + chunk.scene.getName() + ")";
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  /** The neighbor handed out last, reused like the blocks of BlueMap's neighborhood. */
+  private static final class Neighbor extends ExtendedBlock {
+    private final TreeScene scene;
+    private final LightData light = new LightData(0, 0);
+    private int x, y, z;
+
+    Neighbor(TreeScene scene, RenderSettings renderSettings, World world) {
+      super(null, renderSettings, world, null);
+      this.scene = scene;
+    }
+
+    Neighbor moveTo(int x, int y, int z) {
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      return this;
+    }
+
+    @Override
+    public int getX() {
+      return x;
+    }
+
+    @Override
+    public int getY() {
+      return y;
+    }
+
+    @Override
+    public int getZ() {
+      return z;
+    }
+
+    @Override
+    public BlockState getBlockState() {
+      return scene.get(x, y, z);
+    }
+
+    @Override
+    public LightData getLightData() {
+      int packed = scene.getPackedLight(x, y, z);
+      return light.set(packed >> 4, packed & 0xF);
+    }
+
+    @Override
+    public BlockProperties getProperties() {
+      return scene.isCulling(x, y, z) ? CULLING : TRANSPARENT;
+    }
+  }
+
+  private static final class SceneChunk implements Chunk {
+    private final TreeScene scene;
+
+    SceneChunk(TreeScene scene) {
+      this.scene = scene;
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+      return scene.get(x, y, z);
+    }
+
+    @Override
+    public LightData getLightData(int x, int y, int z, LightData target) {
+      int packed = scene.getPackedLight(x, y, z);
+      return target.set(packed >> 4, packed & 0xF);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.ArrayTileModel;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModel;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.render.AbstractDynamicTreeRenderer;
+import eu.zhincore.bluemapdynamictrees.render.BranchModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.LeavesRenderer;
+import eu.zhincore.bluemapdynamictrees.render.SurfaceRootModelRenderer;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+
+/**
+ * Renders a whole {@link TreeScene} including its leaves in the order BlueMap renders a tile: column
+ * by column along x then z, each column from the top down. Branches, roots and leaves take turns as
+ * they come up in the columns, which is the access pattern the connection grid has to serve. The
+ * score is us per scene.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TraversalBenchmark {
+  private static final int CAPACITY = 1 << 16;
+
+  @Param({ "leafTwig", "forest" })
+  public String scene;
+
+  private InMemoryNeighborhood neighborhood;
+  private TreeScene.Target[] targets;
+  private AbstractDynamicTreeRenderer[] renderers;
+  private BranchModelExtension[] models;
+  private TileModel tileModel;
+  private TileModelView blockModel;
+  private final Color color = new Color();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    TreeScene treeScene = TreeScene.create(scene);
+    Fixtures.useProfile(RenderProfile.FULL);
+
+    DynamicTreesPack pack = Fixtures.pack(treeScene);
+    TextureGallery textureGallery = new TextureGallery();
+    RenderSettings renderSettings = Fixtures.renderSettings();
+    BranchModelRenderer branchRenderer =
+        new BranchModelRenderer(pack, textureGallery, renderSettings);
+    SurfaceRootModelRenderer rootRenderer =
+        new SurfaceRootModelRenderer(pack, textureGallery, renderSettings);
+    LeavesRenderer leavesRenderer = new LeavesRenderer(pack, textureGallery, renderSettings);
+    BranchModelExtension branchModel = Fixtures.model(Fixtures.BRANCH_MODEL);
+    BranchModelExtension rootModel = Fixtures.model(Fixtures.ROOT_MODEL);
+    BranchModelExtension leavesModel = new BranchModelExtension(LoaderType.LEAVES,
+        new ResourcePath<>("minecraft:block/oak_leaves"), null);
+
+    List<TreeScene.Target> sceneTargets = new ArrayList<>(treeScene.getTargets());
+    sceneTargets.addAll(treeScene.getLeaves());
+    sceneTargets.sort((a, b) -> a.x() != b.x() ? Integer.compare(a.x(), b.x())
+        : a.z() != b.z() ? Integer.compare(a.z(), b.z()) : Integer.compare(b.y(), a.y()));
+
+    neighborhood = new InMemoryNeighborhood(treeScene);
+    targets = sceneTargets.toArray(TreeScene.Target[]::new);
+    renderers = new AbstractDynamicTreeRenderer[targets.length];
+    models = new BranchModelExtension[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      switch (targets[i].kind()) {
+        case BRANCH -> {
+          renderers[i] = branchRenderer;
+          models[i] = branchModel;
+        }
+        case ROOT -> {
+          renderers[i] = rootRenderer;
+          models[i] = rootModel;
+        }
+        case LEAVES -> {
+          renderers[i] = leavesRenderer;
+          models[i] = leavesModel;
+        }
+      }
+    }
+
+    tileModel = new ArrayTileModel(CAPACITY);
+    blockModel = new TileModelView(tileModel);
+  }
+
+  @Benchmark
+  public int renderTile() {
+    tileModel.clear();
+    for (int i = 0; i < targets.length; i++) {
+      TreeScene.Target target = targets[i];
+      blockModel.initialize();
+      renderers[i].render(neighborhood.moveTo(target.x(), target.y(), target.z()), models[i],
+          blockModel, color);
+    }
+    return tileModel.size();
+  }
+}
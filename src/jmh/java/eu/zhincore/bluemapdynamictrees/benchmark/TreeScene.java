@@ -0,0 +1,392 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.Key;
+import de.bluecolored.bluemap.core.world.BlockState;
+
+/**
+ * Small in-memory world fragment of Dynamic Trees blocks together with the list of blocks a
+ * benchmark renders from it. The leaves around the branches are listed separately, benchmarks only
+ * render the branches and roots.
+ */
+public final class TreeScene {
+  public static final int SIZE_X = 24;
+  public static final int SIZE_Y = 48;
+  public static final int SIZE_Z = 24;
+
+  public static final BlockState AIR = state("minecraft:air");
+  public static final BlockState STONE = state("minecraft:stone");
+  public static final BlockState ROOTY_DIRT = state("dynamictrees:rooty_dirt");
+  public static final BlockState LEAVES = state("dynamictrees:oak_leaves");
+  public static final int FULL_SKY_LIGHT = 15 << 4;
+
+  public enum Kind {
+    BRANCH, ROOT, LEAVES
+  }
+
+  public record Target(int x, int y, int z, Kind kind) {
+  }
+
+  private static final Direction[] HORIZONTAL_DIRECTIONS =
+      { Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST };
+
+  private final String name;
+  private final BlockState[] blocks = new BlockState[SIZE_X * SIZE_Y * SIZE_Z];
+  private final List<Target> targets = new ArrayList<>();
+  private final List<Target> leaves = new ArrayList<>();
+  private final Map<String, BlockState> states = new HashMap<>();
+  /** Packed light of every block, full sky light everywhere while this is not set. */
+  private byte[] lights;
+
+  private TreeScene(String name) {
+    this.name = name;
+    Arrays.fill(blocks, AIR);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<Target> getTargets() {
+    return targets;
+  }
+
+  public List<Target> getLeaves() {
+    return leaves;
+  }
+
+  public BlockState get(int x, int y, int z) {
+    if (!isInside(x, y, z))
+      return AIR;
+    return blocks[index(x, y, z)];
+  }
+
+  public int getPackedLight(int x, int y, int z) {
+    if (lights == null || !isInside(x, y, z))
+      return FULL_SKY_LIGHT;
+    return lights[index(x, y, z)] & 0xFF;
+  }
+
+  public boolean isCulling(int x, int y, int z) {
+    BlockState state = get(x, y, z);
+    return state == STONE || state == ROOTY_DIRT;
+  }
+
+  private void set(int x, int y, int z, BlockState state) {
+    blocks[index(x, y, z)] = state;
+  }
+
+  private void branch(int x, int y, int z, int radius) {
+    branch("oak", x, y, z, radius);
+  }
+
+  private void branch(String species, int x, int y, int z, int radius) {
+    set(x, y, z, radiusState("dynamictrees:" + species + "_branch", radius));
+    targets.add(new Target(x, y, z, Kind.BRANCH));
+  }
+
+  private void root(int x, int y, int z, int radius) {
+    root("oak", x, y, z, radius);
+  }
+
+  private void root(String species, int x, int y, int z, int radius) {
+    set(x, y, z, radiusState("dynamictrees:" + species + "_surface_root", radius));
+    targets.add(new Target(x, y, z, Kind.ROOT));
+  }
+
+  private void leavesAround(int x, int y, int z) {
+    for (int dx = -1; dx <= 1; dx++) {
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dz = -1; dz <= 1; dz++) {
+          if (isInside(x + dx, y + dy, z + dz) && get(x + dx, y + dy, z + dz) == AIR) {
+            set(x + dx, y + dy, z + dz, LEAVES);
+            leaves.add(new Target(x + dx, y + dy, z + dz, Kind.LEAVES));
+          }
+        }
+      }
+    }
+  }
+
+  private BlockState radiusState(String id, int radius) {
+    return states.computeIfAbsent(id + radius,
+        k -> new BlockState(Key.parse(id), Map.of("radius", Integer.toString(radius))));
+  }
+
+  private static boolean isInside(int x, int y, int z) {
+    return x >= 0 && y >= 0 && z >= 0 && x < SIZE_X && y < SIZE_Y && z < SIZE_Z;
+  }
+
+  private static int index(int x, int y, int z) {
+    return (y * SIZE_Z + z) * SIZE_X + x;
+  }
+
+  private static BlockState state(String id) {
+    return new BlockState(Key.parse(id), Map.of());
+  }
+
+  /**
+   * A few trees of random height, radius and side branches with surface roots, leaves, stray stone
+   * blocks and random light, the same for the same seed.
+   */
+  public static TreeScene random(long seed) {
+    TreeScene scene = new TreeScene("random-" + seed);
+    scene.randomTrees(new Random(seed));
+    return scene;
+  }
+
+  public static TreeScene create(String name) {
+    TreeScene scene = new TreeScene(name);
+    switch (name) {
+      case "trunk" -> scene.trunk();
+      case "thickTrunk" -> scene.thickTrunk();
+      case "fork" -> scene.fork();
+      case "twigRing" -> scene.twigRing();
+      case "leafTwig" -> scene.leafTwig();
+      case "surfaceRoot" -> scene.surfaceRoot();
+      case "forest" -> scene.forest();
+      default -> throw new IllegalArgumentException("Unknown scene: " + name);
+    }
+    return scene;
+  }
+
+  private void randomTrees(Random random) {
+    for (int x = 0; x < SIZE_X; x++) {
+      for (int z = 0; z < SIZE_Z; z++) {
+        set(x, 0, z, STONE);
+      }
+    }
+
+    int trees = 2 + random.nextInt(3);
+    for (int tree = 0; tree < trees; tree++) {
+      String species = random.nextBoolean() ? "oak" : "spruce";
+      int x = 3 + random.nextInt(SIZE_X - 6);
+      int z = 3 + random.nextInt(SIZE_Z - 6);
+      // Up to twice as thick as a block, like the trunks of large Dynamic Trees
+      int radius = 1 + random.nextInt(16);
+      int height = 4 + random.nextInt(SIZE_Y - 12);
+      set(x, 0, z, ROOTY_DIRT);
+
+      for (int y = 1; y <= height && radius > 0; y++) {
+        if (get(x, y, z) != AIR)
+          break;
+        branch(species, x, y, z, radius);
+
+        if (random.nextInt(4) == 0) {
+          randomLimb(random, species, x, y, z, 1 + random.nextInt(Math.min(radius, 8)));
+        }
+        if (random.nextInt(5) == 0) {
+          radius--;
+        }
+      }
+
+      for (int i = 0; i < 4; i++) {
+        if (random.nextBoolean()) {
+          int dx = i == 0 ? 1 : i == 1 ? -1 : 0;
+          int dz = i == 2 ? 1 : i == 3 ? -1 : 0;
+          int rootRadius = 1 + random.nextInt(8);
+          for (int step = 1; step <= 1 + random.nextInt(4); step++) {
+            if (get(x + dx * step, 1, z + dz * step) != AIR)
+              break;
+            root(species, x + dx * step, 1, z + dz * step, rootRadius);
+            rootRadius = Math.max(1, rootRadius - random.nextInt(2));
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < 40; i++) {
+      int x = random.nextInt(SIZE_X);
+      int y = 1 + random.nextInt(SIZE_Y - 1);
+      int z = random.nextInt(SIZE_Z);
+      if (get(x, y, z) == AIR) {
+        set(x, y, z, STONE);
+      }
+    }
+
+    lights = new byte[blocks.length];
+    for (int i = 0; i < lights.length; i++) {
+      lights[i] = (byte) (random.nextInt(16) << 4 | random.nextInt(16));
+    }
+  }
+
+  /** A horizontal limb leaving the trunk at a random side, ending in leaves. */
+  private void randomLimb(Random random, String species, int x, int y, int z, int radius) {
+    Direction dir = HORIZONTAL_DIRECTIONS[random.nextInt(HORIZONTAL_DIRECTIONS.length)];
+    var step = dir.toVector();
+    int length = 1 + random.nextInt(5);
+    int i = 1;
+    for (; i <= length; i++) {
+      int bx = x + step.getX() * i;
+      int bz = z + step.getZ() * i;
+      if (bx < 0 || bz < 0 || bx >= SIZE_X || bz >= SIZE_Z || get(bx, y, bz) != AIR)
+        break;
+      branch(species, bx, y, bz, radius);
+    }
+    if (i > 1 && random.nextBoolean()) {
+      leavesAround(x + step.getX() * (i - 1), y, z + step.getZ() * (i - 1));
+    }
+  }
+
+  /** Straight trunks of different thickness standing on rooty soil. */
+  private void trunk() {
+    int[] radii = { 3, 5, 8 };
+    for (int i = 0; i < radii.length; i++) {
+      int x = 4 + i * 8;
+      set(x, 0, 12, ROOTY_DIRT);
+      for (int y = 1; y < 32; y++) {
+        branch(x, y, 12, radii[i]);
+      }
+    }
+  }
+
+  /** Trunks thicker than a block tapering by one radius every two blocks, down to a branch. */
+  private void thickTrunk() {
+    int[] startRadii = { 16, 13 };
+    for (int i = 0; i < startRadii.length; i++) {
+      int x = 6 + i * 12;
+      set(x, 0, 12, ROOTY_DIRT);
+      for (int y = 1; y < SIZE_Y; y++) {
+        int radius = startRadii[i] - (y - 1) / 2;
+        if (radius < 4)
+          break;
+        branch(x, y, 12, radius);
+      }
+    }
+  }
+
+  /** A trunk splitting into two branches that fork again. */
+  private void fork() {
+    set(12, 0, 12, ROOTY_DIRT);
+    for (int y = 1; y <= 10; y++) {
+      branch(12, y, 12, 6);
+    }
+    for (int i = 1; i <= 5; i++) {
+      branch(12 + i, 10, 12, 4);
+      branch(12 - i, 10, 12, 4);
+    }
+    for (int y = 11; y <= 16; y++) {
+      branch(12, y, 12, 4);
+      branch(17, y, 12, 3);
+      branch(7, y, 12, 3);
+    }
+    for (int i = 1; i <= 3; i++) {
+      branch(17, 16, 12 + i, 2);
+      branch(7, 16, 12 - i, 2);
+    }
+  }
+
+  /** A horizontal limb covered in single block twigs, every twig ends in a ring cap. */
+  private void twigRing() {
+    for (int x = 2; x < 22; x++) {
+      branch(x, 8, 12, 2);
+      branch(x, 9, 12, 1);
+      if (x % 2 == 0) {
+        branch(x, 8, 11, 1);
+        branch(x, 7, 12, 1);
+      } else {
+        branch(x, 8, 13, 1);
+      }
+    }
+  }
+
+  /** Thin twigs buried in leaves, like the outer part of a canopy. */
+  private void leafTwig() {
+    for (int x = 2; x < 22; x += 2) {
+      for (int z = 2; z < 22; z += 4) {
+        branch(x, 20, z, 2);
+        branch(x, 21, z, 1);
+        branch(x, 20, z + 1, 1);
+      }
+    }
+    for (Target target : List.copyOf(targets)) {
+      leavesAround(target.x(), target.y(), target.z());
+    }
+  }
+
+  /** Surface roots spreading from trunks over the ground. */
+  private void surfaceRoot() {
+    for (int x = 0; x < SIZE_X; x++) {
+      for (int z = 0; z < SIZE_Z; z++) {
+        set(x, 0, z, STONE);
+      }
+    }
+    for (int cx = 6; cx < SIZE_X; cx += 12) {
+      for (int cz = 6; cz < SIZE_Z; cz += 12) {
+        for (int i = 1; i <= 5; i++) {
+          int radius = Math.max(1, 4 - i / 2);
+          root(cx + i, 1, cz, radius);
+          root(cx - i, 1, cz, radius);
+          root(cx, 1, cz + i, radius);
+          root(cx, 1, cz - i, radius);
+        }
+      }
+    }
+  }
+
+  /**
+   * Three species side by side on stone: an oak forking into limbs with twigs, a tapering spruce
+   * with side twigs and a thick jungle trunk with surface roots, all of them in leaves.
+   */
+  private void forest() {
+    for (int x = 0; x < SIZE_X; x++) {
+      for (int z = 0; z < SIZE_Z; z++) {
+        set(x, 0, z, STONE);
+      }
+    }
+
+    set(6, 0, 6, ROOTY_DIRT);
+    for (int y = 1; y <= 12; y++) {
+      branch("oak", 6, y, 6, 5);
+    }
+    for (int i = 1; i <= 4; i++) {
+      branch("oak", 6 + i, 12, 6, 3);
+      branch("oak", 6 - i, 12, 6, 3);
+    }
+    for (int y = 13; y <= 17; y++) {
+      branch("oak", 10, y, 6, 2);
+      branch("oak", 2, y, 6, 2);
+    }
+    for (int i = 1; i <= 2; i++) {
+      branch("oak", 10, 17, 6 + i, 1);
+      branch("oak", 2, 17, 6 - i, 1);
+    }
+
+    set(17, 0, 6, ROOTY_DIRT);
+    for (int y = 1; y <= 30; y++) {
+      int radius = y <= 10 ? 4 : y <= 20 ? 3 : y <= 28 ? 2 : 1;
+      branch("spruce", 17, y, 6, radius);
+      if (y > 8 && y % 3 == 0) {
+        boolean east = y % 2 == 0;
+        branch("spruce", east ? 18 : 16, y, 6, 1);
+        branch("spruce", 17, y, east ? 7 : 5, 1);
+      }
+    }
+
+    set(12, 0, 17, ROOTY_DIRT);
+    for (int y = 1; y <= 25; y++) {
+      branch("jungle", 12, y, 17, 7);
+    }
+    for (int i = 1; i <= 4; i++) {
+      int radius = 4 - i / 2;
+      root("jungle", 12 + i, 1, 17, radius);
+      root("jungle", 12 - i, 1, 17, radius);
+      root("jungle", 12, 1, 17 + i, radius);
+      root("jungle", 12, 1, 17 - i, radius);
+    }
+
+    // Crowns: the oak above its fork, the spruce from its first twigs and the jungle top
+    for (Target target : List.copyOf(targets)) {
+      int x = target.x(), y = target.y(), z = target.z();
+      boolean jungle = x == 12 && z == 17;
+      if (target.kind() == Kind.BRANCH && y >= (jungle ? 23 : 9)) {
+        leavesAround(x, y, z);
+      }
+    }
+  }
+}
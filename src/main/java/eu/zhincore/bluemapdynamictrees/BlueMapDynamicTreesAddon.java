@@ -1,7 +1,16 @@
 package eu.zhincore.bluemapdynamictrees;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import de.bluecolored.bluemap.api.BlueMapAPI;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePack;
+import eu.zhincore.bluemapdynamictrees.config.AddonConfig;
+import eu.zhincore.bluemapdynamictrees.metrics.CostHeatmap;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
+import eu.zhincore.bluemapdynamictrees.render.LoadMonitor;
 import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPackFactory;
 
 public class BlueMapDynamicTreesAddon implements Runnable {
@@ -9,10 +18,49 @@ public class BlueMapDynamicTreesAddon implements Runnable {
 
   public static final String DT_ID = "dynamictrees";
 
+  private static final String CORE_CONFIG = "core.conf";
+
   public void run() {
+    try {
+      AddonConfig.load(getConfigFolder());
+    } catch (IOException | URISyntaxException e) {
+      Logger.global.logError("Failed to load " + AddonConfig.FILE_NAME
+          + ", using the default settings", e);
+    }
+
+    BlueMapAPI.onEnable(AddonConfig::registerMaps);
+    if (AddonConfig.get().isMetrics()) {
+      RenderMetrics.INSTANCE.register();
+    }
+    RenderMetrics.INSTANCE.logSummaryEvery(AddonConfig.get().getMetricsLogInterval());
+    if (AddonConfig.get().isCostHeatmap()) {
+      BlueMapAPI.onEnable(CostHeatmap.INSTANCE::start);
+      BlueMapAPI.onDisable(api -> CostHeatmap.INSTANCE.stop());
+    }
+    if (AddonConfig.get().isLoadAdaptive()) {
+      BlueMapAPI.onEnable(LoadMonitor.INSTANCE::start);
+      BlueMapAPI.onDisable(api -> LoadMonitor.INSTANCE.stop());
+    }
+
     ResourcePack.Extension.REGISTRY.register(DynamicTreesPackFactory.INSTANCE);
 
     Logger.global.logInfo("BlueMap DynamicTrees addon registered");
   }
 
+  /**
+   * The BlueMap config folder, the closest folder above the addon jar holding BlueMap's
+   * {@code core.conf}. BlueMap does not pass it to addons, but loads them from inside it.
+   */
+  private static Path getConfigFolder() throws URISyntaxException {
+    Path jar = Path.of(BlueMapDynamicTreesAddon.class.getProtectionDomain().getCodeSource()
+        .getLocation().toURI()).toAbsolutePath();
+    for (Path folder = jar.getParent(); folder != null; folder = folder.getParent()) {
+      if (Files.isRegularFile(folder.resolve(CORE_CONFIG)))
+        return folder;
+    }
+
+    // Not written yet on BlueMap's very first start, addons are loaded from its packs folder
+    return jar.getParent().getParent();
+  }
+
 }
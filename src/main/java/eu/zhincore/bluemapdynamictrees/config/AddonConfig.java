@@ -0,0 +1,232 @@
+package eu.zhincore.bluemapdynamictrees.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.configurate.ConfigurationNode;
+import org.spongepowered.configurate.hocon.HoconConfigurationLoader;
+import de.bluecolored.bluemap.api.BlueMapAPI;
+import de.bluecolored.bluemap.api.BlueMapMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.world.World;
+
+/**
+ * The addon's own settings, read from {@value #FILE_NAME} in the BlueMap config folder.
+ */
+public class AddonConfig {
+  public static final String FILE_NAME = "dynamictrees.conf";
+  public static final String CACHE_FILE_NAME = "dynamictrees-models.cache";
+  public static final String DEGRADED_REGIONS_FILE_NAME = "dynamictrees-degraded-regions";
+
+  private static volatile AddonConfig current =
+      new AddonConfig(RenderProfile.FULL, Map.of(), null, false, 0, false, 0, 0);
+
+  /**
+   * The ids of BlueMap's maps by the id of their world. Renderers are only handed the map's
+   * settings, which the API does not link to a map, so maps are found by the world of the blocks.
+   */
+  private static volatile Map<String, List<String>> worldMaps = Map.of();
+  /** Worlds whose maps set different profiles, warned about once. */
+  private static final Set<String> AMBIGUOUS_WORLDS = ConcurrentHashMap.newKeySet();
+
+  private final RenderProfile defaultProfile;
+  private final Map<String, RenderProfile> mapProfiles;
+  private final @Nullable Path dataFolder;
+  private final boolean metrics;
+  private final int metricsLogInterval;
+  private final boolean costHeatmap;
+  private final int degradeQueueSize;
+  private final int degradeRenderMicros;
+
+  private AddonConfig(RenderProfile defaultProfile, Map<String, RenderProfile> mapProfiles,
+      @Nullable Path dataFolder, boolean metrics, int metricsLogInterval, boolean costHeatmap,
+      int degradeQueueSize, int degradeRenderMicros) {
+    this.defaultProfile = defaultProfile;
+    this.mapProfiles = mapProfiles;
+    this.dataFolder = dataFolder;
+    this.metrics = metrics;
+    this.metricsLogInterval = metricsLogInterval;
+    this.costHeatmap = costHeatmap;
+    this.degradeQueueSize = degradeQueueSize;
+    this.degradeRenderMicros = degradeRenderMicros;
+  }
+
+  public static AddonConfig get() {
+    return current;
+  }
+
+  /** Where parsed models are kept between restarts, {@code null} if they are not. */
+  public @Nullable Path getCacheFile() {
+    return dataFolder != null ? dataFolder.resolve(CACHE_FILE_NAME) : null;
+  }
+
+  /**
+   * Where the regions waiting for a full-detail render are kept between restarts, {@code null} if
+   * they are not.
+   */
+  public @Nullable Path getDegradedRegionsFile() {
+    return dataFolder != null ? dataFolder.resolve(DEGRADED_REGIONS_FILE_NAME) : null;
+  }
+
+  /** Whether blocks are timed and the render metrics are published over JMX. */
+  public boolean isMetrics() {
+    return metrics;
+  }
+
+  /** Minutes between render metrics summaries in the log, 0 if they are not logged. */
+  public int getMetricsLogInterval() {
+    return metrics ? metricsLogInterval : 0;
+  }
+
+  /** Whether the render cost per chunk is recorded and shown as a marker set. */
+  public boolean isCostHeatmap() {
+    return costHeatmap;
+  }
+
+  /** Queued render tasks above which trees get less detail, 0 if unlimited. */
+  public int getDegradeQueueSize() {
+    return degradeQueueSize;
+  }
+
+  /** Mean render time of a block above which trees get less detail, 0 if unlimited. */
+  public int getDegradeRenderMicros() {
+    return degradeRenderMicros;
+  }
+
+  /** Whether the render time of every block is measured, something needs it. */
+  public boolean isRenderTimed() {
+    return metrics || costHeatmap || degradeRenderMicros > 0;
+  }
+
+  /** Whether trees may be rendered with less detail while BlueMap is busy. */
+  public boolean isLoadAdaptive() {
+    return degradeQueueSize > 0 || degradeRenderMicros > 0;
+  }
+
+  /** Whether any map renders Dynamic Trees leaves in another mode than BlueMap's own. */
+  public boolean isLeavesRendered() {
+    return defaultProfile.leaves() != RenderProfile.Leaves.VANILLA || mapProfiles.values()
+        .stream().anyMatch(profile -> profile.leaves() != RenderProfile.Leaves.VANILLA);
+  }
+
+  /** The profile of maps without their own. */
+  public RenderProfile getDefaultProfile() {
+    return defaultProfile;
+  }
+
+  /**
+   * The profile of the maps rendering the world, by the maps' ids. If maps of the world set
+   * different profiles the default one is used, the renderers can't tell the maps apart.
+   */
+  public RenderProfile getProfile(World world) {
+    RenderProfile profile = null;
+    for (String mapId : getMapIds(world.getId())) {
+      RenderProfile mapProfile = mapProfiles.getOrDefault(mapId, defaultProfile);
+      if (profile != null && !profile.equals(mapProfile)) {
+        if (AMBIGUOUS_WORLDS.add(world.getId())) {
+          Logger.global.logWarning("Dynamic Trees: the maps of world " + world.getId()
+              + " set different profiles in " + FILE_NAME
+              + ", rendering them all with the default one");
+        }
+        return defaultProfile;
+      }
+      profile = mapProfile;
+    }
+    return profile != null ? profile : defaultProfile;
+  }
+
+  /** The ids of the maps rendering the world, empty if no known map does. */
+  public static List<String> getMapIds(String worldId) {
+    List<String> mapIds = worldMaps.get(worldId);
+    if (mapIds == null) {
+      // Blocks rendered before the API listeners ran
+      BlueMapAPI.getInstance().ifPresent(AddonConfig::registerMaps);
+      mapIds = worldMaps.get(worldId);
+    }
+    return mapIds != null ? mapIds : List.of();
+  }
+
+  /** Remembers the ids of the maps of the API by the id of their world. */
+  public static void registerMaps(BlueMapAPI api) {
+    Map<String, List<String>> maps = new HashMap<>();
+    for (BlueMapMap map : api.getMaps()) {
+      maps.computeIfAbsent(map.getWorld().getId(), id -> new ArrayList<>()).add(map.getId());
+    }
+    worldMaps = Map.copyOf(maps);
+    AMBIGUOUS_WORLDS.clear();
+  }
+
+  /** Loads the config file, the default one is written first if there is none. */
+  public static void load(Path configFolder) throws IOException {
+    Path file = configFolder.resolve(FILE_NAME);
+    if (!Files.exists(file)) {
+      try (InputStream in = AddonConfig.class.getResourceAsStream("/" + FILE_NAME)) {
+        Files.copy(in, file);
+      }
+    }
+
+    ConfigurationNode root = HoconConfigurationLoader.builder().path(file).build().load();
+
+    RenderProfile defaultProfile = readProfile(root.node("default"), RenderProfile.FULL);
+    Map<String, RenderProfile> mapProfiles = new HashMap<>();
+    root.node("maps").childrenMap().forEach((name, node) -> {
+      mapProfiles.put(name.toString(), readProfile(node, defaultProfile));
+    });
+
+    current = new AddonConfig(defaultProfile, Map.copyOf(mapProfiles),
+        getDataFolder(configFolder),
+        root.node("metrics").getBoolean(false),
+        root.node("metrics-log-interval").getInt(0),
+        root.node("cost-heatmap").getBoolean(false),
+        root.node("degrade-queue-size").getInt(0),
+        root.node("degrade-render-micros").getInt(0));
+  }
+
+  /**
+   * BlueMap's data folder as set in its core.conf, a relative one is taken from the config folder
+   * instead of the server's working directory.
+   */
+  private static Path getDataFolder(Path configFolder) throws IOException {
+    Path coreConfig = configFolder.resolve("core.conf");
+    if (!Files.exists(coreConfig))
+      return configFolder.resolve("bluemap");
+
+    ConfigurationNode root = HoconConfigurationLoader.builder().path(coreConfig).build().load();
+    return configFolder.resolve(root.node("data").getString("bluemap"));
+  }
+
+  private static RenderProfile readProfile(ConfigurationNode node, RenderProfile defaults) {
+    return new RenderProfile(
+        readEnum(node.node("detail"), "render detail", defaults.detail()),
+        node.node("sleeve-min-radius").getInt(defaults.sleeveMinRadius()),
+        node.node("trunk-min-radius").getInt(defaults.trunkMinRadius()),
+        node.node("triangle-budget").getInt(defaults.triangleBudget()),
+        node.node("merge-trunks").getBoolean(defaults.mergeTrunks()),
+        readEnum(node.node("leaves"), "leaves mode", defaults.leaves()),
+        node.node("reference").getBoolean(defaults.reference()));
+  }
+
+  private static <E extends Enum<E>> E readEnum(ConfigurationNode node, String description,
+      E defaultValue) {
+    String name = node.getString();
+    if (name == null)
+      return defaultValue;
+
+    try {
+      return Enum.valueOf(defaultValue.getDeclaringClass(), name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      Logger.global.logWarning("Unknown " + description + " '" + name + "' in " + FILE_NAME
+          + ", using " + defaultValue.name().toLowerCase(Locale.ROOT));
+      return defaultValue;
+    }
+  }
+}
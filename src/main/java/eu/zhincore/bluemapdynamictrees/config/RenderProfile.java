@@ -0,0 +1,59 @@
+package eu.zhincore.bluemapdynamictrees.config;
+
+/**
+ * How much detail the branch and root renderers put into a map.
+ *
+ * @param detail          the geometry the renderers start with
+ * @param sleeveMinRadius the reduced detail skips sleeves thinner than this
+ * @param trunkMinRadius  the minimal detail skips branches thinner than this
+ * @param triangleBudget  blocks needing more triangles are rendered with the next lower detail, 0
+ *                        disables the budget
+ * @param mergeTrunks     the full detail renders blocks inside a straight run as a single box like
+ *                        the reduced detail, the same shape with the bark running across the block
+ * @param leaves          how Dynamic Trees leaves are rendered
+ * @param reference       every face is emitted on its own without templates, caches or culling,
+ *                        neighbors read from the world. Slow, the faster paths are checked
+ *                        against it
+ */
+public record RenderProfile(Detail detail, int sleeveMinRadius, int trunkMinRadius,
+    int triangleBudget, boolean mergeTrunks, Leaves leaves, boolean reference) {
+  public static final RenderProfile FULL =
+      new RenderProfile(Detail.FULL, 3, 3, 0, false, Leaves.VANILLA, false);
+
+  public enum Detail {
+    /** Every core, sleeve and ring end. */
+    FULL,
+    /** No ring ends and thin sleeves, straight branches are a single box. */
+    REDUCED,
+    /** A single box per trunk block, no thin branches and no roots. */
+    MINIMAL;
+
+    public Detail lower() {
+      return this == FULL ? REDUCED : MINIMAL;
+    }
+  }
+
+  public enum Leaves {
+    /** BlueMap's own block rendering. */
+    VANILLA,
+    /** Cubes without the faces between leaves and the blocks covering them. */
+    CULLED,
+    /**
+     * Like culled, also without faces looking into holes inside the canopy of the same species.
+     */
+    CANOPY
+  }
+
+  /**
+   * The profile used while BlueMap is busy: reduced detail. Lower settings and the leaves are kept,
+   * canopy leaves hide faces and are only used where configured.
+   */
+  public RenderProfile degraded() {
+    return new RenderProfile(detail == Detail.FULL ? Detail.REDUCED : detail, sleeveMinRadius,
+        trunkMinRadius, triangleBudget, mergeTrunks, leaves, reference);
+  }
+
+  public boolean fitsBudget(int triangles) {
+    return triangleBudget <= 0 || triangles <= triangleBudget;
+  }
+}
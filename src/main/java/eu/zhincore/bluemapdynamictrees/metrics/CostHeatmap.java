@@ -0,0 +1,213 @@
+package eu.zhincore.bluemapdynamictrees.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.jetbrains.annotations.Nullable;
+import de.bluecolored.bluemap.api.BlueMapAPI;
+import de.bluecolored.bluemap.api.BlueMapMap;
+import de.bluecolored.bluemap.api.markers.MarkerSet;
+import de.bluecolored.bluemap.api.markers.ShapeMarker;
+import de.bluecolored.bluemap.api.math.Color;
+import de.bluecolored.bluemap.api.math.Shape;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+/**
+ * Triangles and render time of Dynamic Trees blocks summed per chunk and world, published to the
+ * world's maps as a marker set of chunk squares colored from green to red by their share of the
+ * most expensive chunk. Re-rendered chunks are counted again, so the sums only compare chunks with
+ * each other. Only the published chunks are kept between passes, cheaper ones start over from zero.
+ */
+public final class CostHeatmap {
+  public static final CostHeatmap INSTANCE = new CostHeatmap();
+
+  private static final String MARKER_SET_ID = "dynamictrees-cost";
+  private static final int PUBLISH_INTERVAL_SECONDS = 60;
+  /** The most expensive chunks shown per world, more markers slow the web app down. */
+  private static final int MAX_MARKERS = 4096;
+  private static final Comparator<ChunkSnapshot> BY_TRIANGLES =
+      Comparator.comparingLong(ChunkSnapshot::triangles);
+
+  private final Map<String, Map<Long, ChunkCost>> worlds = new ConcurrentHashMap<>();
+  /** Counts the times chunks were dropped, recorders look their chunk up again when it changes. */
+  private volatile int generation;
+  private ScheduledExecutorService publishExecutor;
+
+  private CostHeatmap() {
+  }
+
+  /**
+   * A recorder for the world with the id. Each renderer needs its own, recorders are not
+   * thread-safe.
+   */
+  public Recorder recorder(String worldId) {
+    return new Recorder(worlds.computeIfAbsent(worldId, id -> new ConcurrentHashMap<>()));
+  }
+
+  /** Publishes the heatmap to every map of the API until BlueMap disables it. */
+  public synchronized void start(BlueMapAPI api) {
+    stop();
+    publishExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "BlueMapDynamicTrees-CostHeatmap");
+      thread.setDaemon(true);
+      return thread;
+    });
+    publishExecutor.scheduleWithFixedDelay(() -> publish(api), PUBLISH_INTERVAL_SECONDS,
+        PUBLISH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public synchronized void stop() {
+    if (publishExecutor != null) {
+      publishExecutor.shutdownNow();
+      publishExecutor = null;
+    }
+  }
+
+  public void clear() {
+    worlds.values().forEach(Map::clear);
+    generation++;
+  }
+
+  private void publish(BlueMapAPI api) {
+    try {
+      Map<String, MarkerSet> markerSets = new HashMap<>();
+      for (BlueMapMap map : api.getMaps()) {
+        String worldId = map.getWorld().getId();
+        Map<Long, ChunkCost> chunks = worlds.get(worldId);
+        if (chunks != null && !chunks.isEmpty()) {
+          map.getMarkerSets().put(MARKER_SET_ID,
+              markerSets.computeIfAbsent(worldId, id -> createMarkerSet(chunks)));
+        }
+      }
+    } catch (Exception e) {
+      Logger.global.logWarning("Failed to publish the Dynamic Trees cost heatmap: " + e);
+    }
+  }
+
+  private MarkerSet createMarkerSet(Map<Long, ChunkCost> chunks) {
+    List<ChunkSnapshot> expensive = selectExpensive(chunks);
+
+    MarkerSet markerSet = MarkerSet.builder()
+        .label("Dynamic Trees render cost")
+        .toggleable(true)
+        .defaultHidden(true)
+        .build();
+
+    long maxTriangles = Math.max(1, expensive.get(0).triangles());
+    for (ChunkSnapshot chunk : expensive) {
+      int chunkX = (int) (chunk.key() >> 32);
+      int chunkZ = (int) chunk.key();
+      float share = (float) chunk.triangles() / maxTriangles;
+
+      int x = chunkX << 4;
+      int z = chunkZ << 4;
+      markerSet.getMarkers().put(chunkX + "," + chunkZ, ShapeMarker.builder()
+          .label("Chunk " + chunkX + ", " + chunkZ + ": " + chunk.triangles() + " triangles")
+          .detail("Chunk " + chunkX + ", " + chunkZ + "<br>" + chunk.blocks() + " blocks, "
+              + chunk.triangles() + " triangles, " + chunk.nanos() / 1000 + " us rendering")
+          .shape(Shape.createRect(x, z, x + 16, z + 16), chunk.maxY() + 1)
+          .fillColor(heatColor(share, 0.4f))
+          .lineColor(heatColor(share, 0.8f))
+          .lineWidth(1)
+          .depthTestEnabled(false)
+          .build());
+    }
+    return markerSet;
+  }
+
+  /**
+   * The {@link #MAX_MARKERS} most expensive chunks, most expensive first. The others are dropped
+   * from the map, so it only grows by the chunks rendered between two passes.
+   */
+  private List<ChunkSnapshot> selectExpensive(Map<Long, ChunkCost> chunks) {
+    // Render threads keep adding, keep snapshots of the sums in a heap with the cheapest on top
+    PriorityQueue<ChunkSnapshot> heap = new PriorityQueue<>(MAX_MARKERS + 1, BY_TRIANGLES);
+    for (Map.Entry<Long, ChunkCost> entry : chunks.entrySet()) {
+      ChunkCost cost = entry.getValue();
+      if (heap.size() == MAX_MARKERS && cost.triangles.sum() <= heap.peek().triangles())
+        continue;
+
+      heap.add(cost.snapshot(entry.getKey()));
+      if (heap.size() > MAX_MARKERS) {
+        heap.poll();
+      }
+    }
+
+    if (chunks.size() > heap.size()) {
+      Set<Long> kept = new HashSet<>();
+      heap.forEach(chunk -> kept.add(chunk.key()));
+      // A block being added to a dropped chunk right now is lost, it was among the cheapest
+      chunks.keySet().retainAll(kept);
+      generation++;
+    }
+
+    List<ChunkSnapshot> expensive = new ArrayList<>(heap);
+    expensive.sort(BY_TRIANGLES.reversed());
+    return expensive;
+  }
+
+  /** Green for cheap chunks through yellow to red for the most expensive one. */
+  private static Color heatColor(float share, float alpha) {
+    int red = Math.round(255 * Math.min(1f, share * 2));
+    int green = Math.round(255 * Math.min(1f, (1 - share) * 2));
+    return new Color(red, green, 0, alpha);
+  }
+
+  private static final class ChunkCost {
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder triangles = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator maxY = new LongAccumulator(Math::max, Integer.MIN_VALUE);
+
+    private ChunkSnapshot snapshot(long key) {
+      return new ChunkSnapshot(key, blocks.sum(), triangles.sum(), nanos.sum(),
+          (int) maxY.get());
+    }
+  }
+
+  private record ChunkSnapshot(long key, long blocks, long triangles, long nanos, int maxY) {
+  }
+
+  /**
+   * Adds the cost of blocks to their chunk, remembering the chunk of the last block until the
+   * heatmap drops chunks.
+   */
+  public static final class Recorder {
+    private final Map<Long, ChunkCost> chunks;
+    private long lastKey;
+    private int lastGeneration;
+    private @Nullable ChunkCost lastChunk;
+
+    private Recorder(Map<Long, ChunkCost> chunks) {
+      this.chunks = chunks;
+    }
+
+    public void record(int x, int y, int z, int triangles, long nanos) {
+      long key = (long) (x >> 4) << 32 | (z >> 4) & 0xFFFFFFFFL;
+      int generation = INSTANCE.generation;
+      ChunkCost chunk = lastChunk;
+      if (chunk == null || key != lastKey || generation != lastGeneration) {
+        chunk = chunks.computeIfAbsent(key, k -> new ChunkCost());
+        lastChunk = chunk;
+        lastKey = key;
+        lastGeneration = generation;
+      }
+
+      chunk.blocks.increment();
+      chunk.triangles.add(triangles);
+      chunk.nanos.add(nanos);
+      chunk.maxY.accumulate(y);
+    }
+  }
+}
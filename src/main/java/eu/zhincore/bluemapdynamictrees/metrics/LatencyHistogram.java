@@ -0,0 +1,75 @@
+package eu.zhincore.bluemapdynamictrees.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets, precise enough to tell microseconds from
+ * milliseconds at a few nanoseconds per recorded value.
+ */
+public final class LatencyHistogram {
+  private static final int BUCKETS = 64;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0)
+      nanos = 0;
+
+    buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+    count.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  public long getMeanNanos() {
+    long count = getCount();
+    return count == 0 ? 0 : getTotalNanos() / count;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /** The upper bound of the bucket the percentile falls into. */
+  public long getPercentileNanos(double percentile) {
+    long count = getCount();
+    if (count == 0)
+      return 0;
+
+    long rank = (long) Math.ceil(count * percentile / 100d);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i].sum();
+      if (seen >= rank)
+        return i == 0 ? 0 : Math.min(getMaxNanos(), (1L << i) - 1);
+    }
+    return getMaxNanos();
+  }
+
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    count.reset();
+    totalNanos.reset();
+    maxNanos.reset();
+  }
+}
@@ -0,0 +1,239 @@
+package eu.zhincore.bluemapdynamictrees.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import de.bluecolored.bluemap.core.logger.Logger;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+
+/**
+ * What the addon costs: blocks and triangles rendered, faces culled, blocks skipped and the time
+ * spent rendering, loading and baking. Counters are shared by all render threads and never block.
+ * Blocks are only timed while something reads the render times, see
+ * {@link eu.zhincore.bluemapdynamictrees.config.AddonConfig#isRenderTimed()}.
+ */
+public final class RenderMetrics implements RenderMetricsMBean {
+  public static final RenderMetrics INSTANCE = new RenderMetrics();
+
+  private static final String OBJECT_NAME = "eu.zhincore.bluemapdynamictrees:type=RenderMetrics";
+
+  public enum Skip {
+    MISSING_MODEL, MISSING_TEXTURE, NO_RADIUS, CAVE_REMOVED, HIDDEN
+  }
+
+  private final LongAdder[] blocks = newAdders(LoaderType.values().length);
+  private final LongAdder triangles = new LongAdder();
+  private final LongAdder culledFaces = new LongAdder();
+  private final LongAdder caveRemovedFaces = new LongAdder();
+  private final LongAdder[] skips = newAdders(Skip.values().length);
+
+  private final LatencyHistogram render = new LatencyHistogram();
+  private final LatencyHistogram loadResources = new LatencyHistogram();
+  private final LatencyHistogram bake = new LatencyHistogram();
+
+  private ScheduledExecutorService summaryExecutor;
+  private long lastSummaryBlocks;
+
+  private RenderMetrics() {
+  }
+
+  public void blockRendered(LoaderType loader, int triangles, int culledFaces,
+      int caveRemovedFaces) {
+    blocks[loader.ordinal()].increment();
+    this.triangles.add(triangles);
+    if (culledFaces > 0) {
+      this.culledFaces.add(culledFaces);
+    }
+    if (caveRemovedFaces > 0) {
+      this.caveRemovedFaces.add(caveRemovedFaces);
+    }
+  }
+
+  public void skipped(Skip reason) {
+    skips[reason.ordinal()].increment();
+  }
+
+  public LatencyHistogram render() {
+    return render;
+  }
+
+  public LatencyHistogram loadResources() {
+    return loadResources;
+  }
+
+  public LatencyHistogram bake() {
+    return bake;
+  }
+
+  /** Registers the MBean, replacing the one of an earlier BlueMap reload. */
+  public void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+    } catch (JMException e) {
+      Logger.global.logWarning("Failed to register the Dynamic Trees metrics MBean: " + e);
+    }
+  }
+
+  /** Logs a summary at the given interval while blocks are being rendered, 0 stops logging. */
+  public synchronized void logSummaryEvery(int minutes) {
+    if (summaryExecutor != null) {
+      summaryExecutor.shutdownNow();
+      summaryExecutor = null;
+    }
+    if (minutes <= 0)
+      return;
+
+    summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "BlueMapDynamicTrees-Metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    summaryExecutor.scheduleAtFixedRate(this::logSummary, minutes, minutes, TimeUnit.MINUTES);
+  }
+
+  private void logSummary() {
+    long renderedBlocks = getBranchBlocks() + getRootBlocks() + getLeavesBlocks();
+    if (renderedBlocks == lastSummaryBlocks)
+      return;
+
+    lastSummaryBlocks = renderedBlocks;
+    Logger.global.logInfo(getSummary());
+  }
+
+  @Override
+  public long getBranchBlocks() {
+    return blocks[LoaderType.BRANCH.ordinal()].sum();
+  }
+
+  @Override
+  public long getRootBlocks() {
+    return blocks[LoaderType.ROOT.ordinal()].sum();
+  }
+
+  @Override
+  public long getLeavesBlocks() {
+    return blocks[LoaderType.LEAVES.ordinal()].sum();
+  }
+
+  @Override
+  public long getTriangles() {
+    return triangles.sum();
+  }
+
+  @Override
+  public long getCulledFaces() {
+    return culledFaces.sum();
+  }
+
+  @Override
+  public long getCaveRemovedFaces() {
+    return caveRemovedFaces.sum();
+  }
+
+  @Override
+  public long getMissingModelSkips() {
+    return skips[Skip.MISSING_MODEL.ordinal()].sum();
+  }
+
+  @Override
+  public long getMissingTextureSkips() {
+    return skips[Skip.MISSING_TEXTURE.ordinal()].sum();
+  }
+
+  @Override
+  public long getNoRadiusSkips() {
+    return skips[Skip.NO_RADIUS.ordinal()].sum();
+  }
+
+  @Override
+  public long getCaveRemovedSkips() {
+    return skips[Skip.CAVE_REMOVED.ordinal()].sum();
+  }
+
+  @Override
+  public long getHiddenSkips() {
+    return skips[Skip.HIDDEN.ordinal()].sum();
+  }
+
+  @Override
+  public long getRenderMeanMicros() {
+    return render.getMeanNanos() / 1000;
+  }
+
+  @Override
+  public long getRenderP50Micros() {
+    return render.getPercentileNanos(50) / 1000;
+  }
+
+  @Override
+  public long getRenderP99Micros() {
+    return render.getPercentileNanos(99) / 1000;
+  }
+
+  @Override
+  public long getRenderMaxMicros() {
+    return render.getMaxNanos() / 1000;
+  }
+
+  @Override
+  public long getLoadResourcesMicros() {
+    return loadResources.getTotalNanos() / 1000;
+  }
+
+  @Override
+  public long getBakeMicros() {
+    return bake.getTotalNanos() / 1000;
+  }
+
+  @Override
+  public String getSummary() {
+    long renderedBlocks = getBranchBlocks() + getRootBlocks() + getLeavesBlocks();
+    return "Dynamic Trees: " + getBranchBlocks() + " branch, " + getRootBlocks() + " root and "
+        + getLeavesBlocks() + " leaves blocks, " + getTriangles() + " triangles ("
+        + (renderedBlocks == 0 ? 0 : getTriangles() / renderedBlocks) + " per block), "
+        + getCulledFaces() + " faces culled, " + getCaveRemovedFaces() + " removed as cave; "
+        + "skipped " + getMissingModelSkips() + " without model, " + getMissingTextureSkips()
+        + " without texture, " + getNoRadiusSkips() + " without radius, "
+        + getCaveRemovedSkips() + " in caves, " + getHiddenSkips() + " hidden; render mean "
+        + render.getMeanNanos() + " ns, p50 " + render.getPercentileNanos(50) + " ns, p99 "
+        + render.getPercentileNanos(99) + " ns, max " + render.getMaxNanos() + " ns; load "
+        + loadResources.getTotalNanos() / 1_000_000 + " ms, bake "
+        + bake.getTotalNanos() / 1_000_000 + " ms";
+  }
+
+  @Override
+  public void reset() {
+    for (LongAdder adder : blocks) {
+      adder.reset();
+    }
+    triangles.reset();
+    culledFaces.reset();
+    caveRemovedFaces.reset();
+    for (LongAdder adder : skips) {
+      adder.reset();
+    }
+    render.reset();
+    loadResources.reset();
+    bake.reset();
+    CostHeatmap.INSTANCE.clear();
+    lastSummaryBlocks = 0;
+  }
+
+  private static LongAdder[] newAdders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+}
@@ -0,0 +1,44 @@
+package eu.zhincore.bluemapdynamictrees.metrics;
+
+/**
+ * JMX view of {@link RenderMetrics}, times are in microseconds.
+ */
+public interface RenderMetricsMBean {
+  long getBranchBlocks();
+
+  long getRootBlocks();
+
+  long getLeavesBlocks();
+
+  long getTriangles();
+
+  long getCulledFaces();
+
+  long getCaveRemovedFaces();
+
+  long getMissingModelSkips();
+
+  long getMissingTextureSkips();
+
+  long getNoRadiusSkips();
+
+  long getCaveRemovedSkips();
+
+  long getHiddenSkips();
+
+  long getRenderMeanMicros();
+
+  long getRenderP50Micros();
+
+  long getRenderP99Micros();
+
+  long getRenderMaxMicros();
+
+  long getLoadResourcesMicros();
+
+  long getBakeMicros();
+
+  String getSummary();
+
+  void reset();
+}
@@ -1,190 +1,486 @@
 package eu.zhincore.bluemapdynamictrees.render;
 
-import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.map.TextureGallery;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
 import de.bluecolored.bluemap.core.map.hires.TileModel;
 import de.bluecolored.bluemap.core.map.hires.TileModelView;
 import de.bluecolored.bluemap.core.map.hires.block.BlockRenderer;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.blockstate.Variant;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.texture.Texture;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.util.math.Axis;
 import de.bluecolored.bluemap.core.util.math.Color;
-import de.bluecolored.bluemap.core.util.math.MatrixM4f;
-import de.bluecolored.bluemap.core.util.math.VectorM2f;
-import de.bluecolored.bluemap.core.util.math.VectorM3f;
 import de.bluecolored.bluemap.core.world.BlockState;
-import de.bluecolored.bluemap.core.world.LightData;
+import de.bluecolored.bluemap.core.world.World;
 import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
-import de.bluecolored.bluemap.core.world.block.ExtendedBlock;
+import eu.zhincore.bluemapdynamictrees.config.AddonConfig;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.metrics.CostHeatmap;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
 import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
 import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPackFactory;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockIndex;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockInfo;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class AbstractDynamicTreeRenderer implements BlockRenderer {
   protected static final float BLOCK_SCALE = 1f / 16f;
+  protected static final int GEOMETRY_CACHE_SIZE = 4096;
+
+  protected static final Direction[] DIRECTIONS = Direction.values();
+  protected static final RenderMetrics METRICS = RenderMetrics.INSTANCE;
+
+  protected static final int ALL_FACES = (1 << 6) - 1;
+
+  /** Share of a block's top view covered by a vertical branch, by radius. */
+  private static final float[] VERTICAL_FOOTPRINT = new float[9];
+  /** Share of a block's top view covered by a lying branch or root, by radius. */
+  private static final float[] HORIZONTAL_FOOTPRINT = new float[9];
+  static {
+    for (int radius = 0; radius <= 8; radius++) {
+      HORIZONTAL_FOOTPRINT[radius] = radius / 8f;
+      VERTICAL_FOOTPRINT[radius] = radius * radius / 64f;
+    }
+  }
+
+  private static final int KEY_VALUE_BITS = 5;
+  private static final int KEY_VALUE_MASK = (1 << KEY_VALUE_BITS) - 1;
 
-  protected final ResourcePack blueMapResourcePack;
   protected final DynamicTreesPack dynamicTreesResourcePack;
+  protected final TreeBlockIndex blockIndex;
   protected final TextureGallery textureGallery;
   protected final RenderSettings renderSettings;
-
-  protected final VectorM3f[] corners = new VectorM3f[8];
-  protected final VectorM2f[] uvRect = new VectorM2f[2];
+  /** The profile of the current block, {@link #fullProfile} unless BlueMap is busy. */
+  protected RenderProfile profile;
+  /** The profile of the maps of the block's world, the default one until a block is rendered. */
+  protected RenderProfile fullProfile;
+  protected RenderProfile degradedProfile;
+  /**
+   * The lowest detail a block of the map may be rendered with, while BlueMap is busy or when the
+   * block exceeds the triangle budget. Faces are only culled against what a neighbor draws in
+   * every detail down to this one.
+   */
+  protected RenderProfile.Detail lowestDetail;
+  /** Whether blocks are timed, only for the metrics, the heatmap or the load monitor. */
+  private final boolean timed;
+  private @Nullable World world;
+  private @Nullable CostHeatmap.Recorder costRecorder;
+  private @Nullable LoadMonitor.Recorder degradedRecorder;
+
+  /** The box faces are rendered from, minimum then maximum corner in model units. */
+  protected final float[] box = new float[6];
   protected final Color mapColor = new Color();
-
-  protected BlockNeighborhood block;
+  /** Multiplied with the texture of every face. */
+  protected final Color tint = new Color().set(1f, 1f, 1f, 1f, true);
+  protected final GeometryBuilder geometry = new GeometryBuilder();
+  protected final int[] connections = new int[6];
+  /**
+   * Bit mask of the block faces hidden by the neighbor in that direction. The bits shifted by
+   * {@link GeometryTemplate#BEYOND_BLOCK} mark neighbors also hiding faces reaching past the block.
+   */
+  protected int occludedFaces;
+
+  private int[] visibleQuads = new int[64];
+  private final int[] faceSunLight = new int[6];
+  private final int[] faceBlockLight = new int[6];
+  private int caveRemovedFaces;
+  private int referenceCaveRemoved;
+  private final float[] referenceUvs = new float[8];
+  private final BlueMapNeighborhood neighborhood = new BlueMapNeighborhood();
+  /** The grid of the current thread, moved to the block by the renderer before reading it. */
+  protected TreeGrid grid;
+
+  protected TreeNeighborhood block;
+  private @Nullable BlockState lastState;
+  private @Nullable TreeBlockInfo lastInfo;
   protected TileModelView blockModel;
   protected Color blockColor;
-  protected float blockColorOpacity;
+
+  private BranchModelExtension texturedModel;
+  protected int barkTextureId = -1;
+  protected int ringsTextureId = -1;
+  protected final Color barkColor = new Color();
+  protected final Color ringsColor = new Color();
 
   public AbstractDynamicTreeRenderer(ResourcePack resourcePack, TextureGallery textureGallery,
       RenderSettings renderSettings) {
-    this.blueMapResourcePack = resourcePack;
+    this(resourcePack.getExtension(DynamicTreesPackFactory.INSTANCE), textureGallery,
+        renderSettings);
+  }
+
+  public AbstractDynamicTreeRenderer(DynamicTreesPack dynamicTreesPack,
+      TextureGallery textureGallery, RenderSettings renderSettings) {
+    this.dynamicTreesResourcePack = dynamicTreesPack;
+    this.blockIndex = dynamicTreesPack.getBlockIndex();
     this.textureGallery = textureGallery;
     this.renderSettings = renderSettings;
-    this.dynamicTreesResourcePack = resourcePack.getExtension(DynamicTreesPackFactory.INSTANCE);
+    this.timed = AddonConfig.get().isRenderTimed();
+    setProfile(AddonConfig.get().getDefaultProfile());
+  }
+
+  /** Switches to the profile and recorders of the block's world if it is not the last one. */
+  protected void checkWorld(BlockNeighborhood block) {
+    if (block.getWorld() != world) {
+      useWorld(block.getWorld());
+    }
+  }
+
+  /** Takes the profile and recorders of the world's maps, a renderer only renders one map. */
+  private void useWorld(World world) {
+    AddonConfig config = AddonConfig.get();
+    this.world = world;
+    costRecorder = config.isCostHeatmap() ? CostHeatmap.INSTANCE.recorder(world.getId()) : null;
+    degradedRecorder = config.isLoadAdaptive() ? LoadMonitor.INSTANCE.recorder(world.getId())
+        : null;
+
+    RenderProfile worldProfile = config.getProfile(world);
+    if (!worldProfile.equals(fullProfile)) {
+      setProfile(worldProfile);
+      profileChanged();
+    }
+  }
+
+  private void setProfile(RenderProfile mapProfile) {
+    this.fullProfile = mapProfile;
+    this.profile = mapProfile;
+    this.degradedProfile = AddonConfig.get().isLoadAdaptive() ? mapProfile.degraded()
+        : mapProfile;
+    this.lowestDetail = getLowestDetail(fullProfile, degradedProfile);
+  }
+
+  /** Called when the blocks of another world need another profile than the last one. */
+  protected void profileChanged() {
+  }
+
+  private static RenderProfile.Detail getLowestDetail(RenderProfile fullProfile,
+      RenderProfile degradedProfile) {
+    if (fullProfile.triangleBudget() > 0 || degradedProfile.triangleBudget() > 0)
+      return RenderProfile.Detail.MINIMAL;
+    return fullProfile.detail().compareTo(degradedProfile.detail()) > 0 ? fullProfile.detail()
+        : degradedProfile.detail();
+  }
 
-    for (int i = 0; i < corners.length; i++) {
-      corners[i] = new VectorM3f(0, 0, 0);
+  @Override
+  public void render(BlockNeighborhood block, Variant variant, TileModelView blockModel,
+      Color color) {
+    BlockState state = block.getBlockState();
+    TreeBlockInfo info = blockIndex.get(state);
+    lastState = state;
+    lastInfo = info;
+
+    BranchModelExtension model = info.model() != null ? info.model()
+        : dynamicTreesResourcePack.getModel(variant.getModel());
+
+    if (model == null) {
+      METRICS.skipped(RenderMetrics.Skip.MISSING_MODEL);
+      return;
+    }
+
+    checkWorld(block);
+    profile = fullProfile;
+    if (degradedRecorder != null && LoadMonitor.INSTANCE.isDegraded()) {
+      profile = degradedProfile;
+      degradedRecorder.record(block.getX(), block.getZ());
+    }
+
+    if (!timed) {
+      render(neighborhood.set(block), model, blockModel, color);
+      return;
     }
-    for (int i = 0; i < uvRect.length; i++) {
-      uvRect[i] = new VectorM2f(0, 0);
+
+    int triangles = blockModel.getSize();
+    long start = System.nanoTime();
+    render(neighborhood.set(block), model, blockModel, color);
+    long elapsed = System.nanoTime() - start;
+    METRICS.render().record(elapsed);
+
+    if (costRecorder != null) {
+      costRecorder.record(block.getX(), block.getY(), block.getZ(),
+          blockModel.getSize() - triangles, elapsed);
     }
   }
 
+  public abstract void render(TreeNeighborhood block, BranchModelExtension model,
+      TileModelView blockModel, Color color);
+
+  /** The info of the block state, the state of the block being rendered is only looked up once. */
+  protected TreeBlockInfo getInfo(BlockState state) {
+    return state == lastState ? lastInfo : blockIndex.get(state);
+  }
+
+  protected abstract LoaderType getLoaderType();
+
+  /**
+   * Looks up the texture ids of the model unless they are already known. Missing textures get the
+   * id -1.
+   */
+  protected void resolveTextures(BranchModelExtension model) {
+    if (model == texturedModel)
+      return;
+
+    texturedModel = model;
+    barkTextureId = getTextureId(model.barkTexture());
+    ringsTextureId = getTextureId(model.ringsTexture());
+    barkColor.set(dynamicTreesResourcePack.getAverageColor(model.barkTexture()));
+    ringsColor.set(dynamicTreesResourcePack.getAverageColor(model.ringsTexture()));
+  }
+
+  /**
+   * Sets the low-res map color of the block to the average texture color, as opaque as much of the
+   * block's top view the branch covers.
+   *
+   * @param vertical whether the branch runs up, it then covers a square instead of a stripe
+   */
+  protected void setMapColor(Color average, int radius, boolean vertical) {
+    float footprint = average.a > 0
+        ? (vertical ? VERTICAL_FOOTPRINT : HORIZONTAL_FOOTPRINT)[Math.min(radius, 8)]
+        : 0f;
+    blockColor.set(average.r, average.g, average.b, footprint, false);
+  }
+
+  private int getTextureId(@Nullable ResourcePath<Texture> path) {
+    return path == null ? -1 : textureGallery.get(path);
+  }
+
   protected void setCorners(float minX, float minY, float minZ, float maxX, float maxY,
       float maxZ) {
-    corners[0].set(minX, minY, minZ);
-    corners[1].set(minX, minY, maxZ);
-    corners[2].set(maxX, minY, minZ);
-    corners[3].set(maxX, minY, maxZ);
-    corners[4].set(minX, maxY, minZ);
-    corners[5].set(minX, maxY, maxZ);
-    corners[6].set(maxX, maxY, minZ);
-    corners[7].set(maxX, maxY, maxZ);
+    box[0] = minX;
+    box[1] = minY;
+    box[2] = minZ;
+    box[3] = maxX;
+    box[4] = maxY;
+    box[5] = maxZ;
   }
 
-  protected void renderBoxFace(Direction face, int textureId, int uvRotation, int radius, int squish) {
-    VectorM3f[] c = corners;
-    VectorM3f c0, c1, c2, c3;
+  /** Adds a face of the {@link #box} to the template, or emits it right away for the reference. */
+  protected void renderBoxFace(Direction face, int texture, int uvRotation) {
+    if (profile.reference()) {
+      renderReferenceFace(face, texture, uvRotation);
+    } else {
+      geometry.addBoxFace(face, texture, box, uvRotation);
+    }
+  }
+
+  protected void renderGeometry(GeometryTemplate template, int barkTextureId,
+      int ringsTextureId) {
+    int quadCount = template.quadCount;
+    if (visibleQuads.length < quadCount) {
+      visibleQuads = new int[Math.max(quadCount, visibleQuads.length * 2)];
+    }
+
+    int visible = 0;
+    int culled = 0;
+    int caveRemoved = 0;
+    for (int i = 0; i < quadCount; i++) {
+      int boundary = template.boundaries[i];
+      if (boundary != GeometryTemplate.NO_BOUNDARY && (occludedFaces & (1 << boundary)) != 0) {
+        culled++;
+      } else if ((caveRemovedFaces & (1 << template.faces[i].ordinal())) != 0) {
+        caveRemoved++;
+      } else {
+        visibleQuads[visible++] = i;
+      }
+    }
+
+    blockModel.initialize();
+    blockModel.add(visible * 2);
+    TileModel tileModel = blockModel.getTileModel();
+    int start = blockModel.getStart();
+
+    float[] positions = template.positions;
+    float[] uvs = template.uvs;
+    for (int q = 0; q < visible; q++) {
+      int i = visibleQuads[q];
+      int face = template.faces[i].ordinal();
+      int sunLight = faceSunLight[face];
+      int blockLightLevel = faceBlockLight[face];
+
+      int face1 = start + q * 2;
+      int face2 = face1 + 1;
+      int p = i * GeometryTemplate.POSITION_STRIDE;
+      int u = i * GeometryTemplate.UV_STRIDE;
+
+      // @formatter:off
+      tileModel.setPositions(face1,
+        positions[p], positions[p + 1], positions[p + 2],
+        positions[p + 3], positions[p + 4], positions[p + 5],
+        positions[p + 6], positions[p + 7], positions[p + 8]
+      );
+      tileModel.setPositions(face2,
+        positions[p], positions[p + 1], positions[p + 2],
+        positions[p + 6], positions[p + 7], positions[p + 8],
+        positions[p + 9], positions[p + 10], positions[p + 11]
+      );
+      // @formatter:on
+
+      int textureId = template.textures[i] == GeometryTemplate.RINGS ? ringsTextureId
+          : barkTextureId;
+      tileModel.setMaterialIndex(face1, textureId);
+      tileModel.setMaterialIndex(face2, textureId);
+
+      // @formatter:off
+      tileModel.setUvs(face1,
+        uvs[u], uvs[u + 1],
+        uvs[u + 2], uvs[u + 3],
+        uvs[u + 4], uvs[u + 5]
+      );
+      tileModel.setUvs(face2,
+        uvs[u], uvs[u + 1],
+        uvs[u + 4], uvs[u + 5],
+        uvs[u + 6], uvs[u + 7]
+      );
+      // @formatter:on
+
+      tileModel.setColor(face1, tint.r, tint.g, tint.b);
+      tileModel.setColor(face2, tint.r, tint.g, tint.b);
+
+      tileModel.setBlocklight(face1, blockLightLevel);
+      tileModel.setBlocklight(face2, blockLightLevel);
+      tileModel.setSunlight(face1, sunLight);
+      tileModel.setSunlight(face2, sunLight);
+
+      tileModel.setAOs(face1, 1f, 1f, 1f);
+      tileModel.setAOs(face2, 1f, 1f, 1f);
+    }
+
+    METRICS.blockRendered(getLoaderType(), visible * 2, culled, caveRemoved);
+  }
+
+  /**
+   * Starts a block of the reference profile. Its faces are emitted one at a time by
+   * {@link #renderBoxFace} instead of being baked into a template.
+   */
+  protected void beginReference() {
+    blockModel.initialize();
+    referenceCaveRemoved = 0;
+  }
+
+  /** Ends a block of the reference profile, returns whether any face was emitted. */
+  protected boolean endReference() {
+    METRICS.blockRendered(getLoaderType(), blockModel.getSize(), 0, referenceCaveRemoved);
+    return blockModel.getSize() > 0;
+  }
+
+  /**
+   * Emits a box face straight into the tile model like the renderers did before templates: the
+   * corners picked per face, the UVs rotated by {@link #calculateUVs}, the light read from the
+   * block and the faced neighbor and nothing culled, only faces removed as cave are left out.
+   */
+  private void renderReferenceFace(Direction face, int texture, int uvRotation) {
+    int c0, c1, c2, c3;
+    int uAxis, vAxis;
 
     switch (face) {
       case DOWN:
-        c0 = c[0];
-        c1 = c[2];
-        c2 = c[3];
-        c3 = c[1];
-        uvRect[0].x = c0.x;
-        uvRect[0].y = c0.z;
-        uvRect[1].x = c2.x;
-        uvRect[1].y = c2.z;
+        c0 = 0;
+        c1 = 2;
+        c2 = 3;
+        c3 = 1;
+        uAxis = 0;
+        vAxis = 2;
         break;
       case UP:
-        c0 = c[5];
-        c1 = c[7];
-        c2 = c[6];
-        c3 = c[4];
-        uvRect[0].x = c0.x;
-        uvRect[0].y = c0.z;
-        uvRect[1].x = c2.x;
-        uvRect[1].y = c2.z;
+        c0 = 5;
+        c1 = 7;
+        c2 = 6;
+        c3 = 4;
+        uAxis = 0;
+        vAxis = 2;
         break;
       case NORTH:
-        c0 = c[2];
-        c1 = c[0];
-        c2 = c[4];
-        c3 = c[6];
-        uvRect[0].x = c0.x;
-        uvRect[0].y = c0.y;
-        uvRect[1].x = c2.x;
-        uvRect[1].y = c2.y;
+        c0 = 2;
+        c1 = 0;
+        c2 = 4;
+        c3 = 6;
+        uAxis = 0;
+        vAxis = 1;
         break;
       case SOUTH:
-        c0 = c[1];
-        c1 = c[3];
-        c2 = c[7];
-        c3 = c[5];
-        uvRect[0].x = c0.x;
-        uvRect[0].y = c0.y;
-        uvRect[1].x = c2.x;
-        uvRect[1].y = c2.y;
+        c0 = 1;
+        c1 = 3;
+        c2 = 7;
+        c3 = 5;
+        uAxis = 0;
+        vAxis = 1;
         break;
       case WEST:
-        c0 = c[0];
-        c1 = c[1];
-        c2 = c[5];
-        c3 = c[4];
-        uvRect[0].x = c0.z;
-        uvRect[0].y = c0.y;
-        uvRect[1].x = c2.z;
-        uvRect[1].y = c2.y;
+        c0 = 0;
+        c1 = 1;
+        c2 = 5;
+        c3 = 4;
+        uAxis = 2;
+        vAxis = 1;
         break;
       case EAST:
       default:
-        c0 = c[3];
-        c1 = c[2];
-        c2 = c[6];
-        c3 = c[7];
-        uvRect[0].x = c0.z;
-        uvRect[0].y = c0.y;
-        uvRect[1].x = c2.z;
-        uvRect[1].y = c2.y;
+        c0 = 3;
+        c1 = 2;
+        c2 = 6;
+        c3 = 7;
+        uAxis = 2;
+        vAxis = 1;
         break;
     }
 
-    Vector3i faceVec = face.toVector();
-    ExtendedBlock facedBlock = block.getNeighborBlock(faceVec.getX(), faceVec.getY(), faceVec.getZ());
-    LightData blockLight = block.getLightData();
-    LightData facedLight = facedBlock.getLightData();
+    var faceVec = face.toVector();
+    int ownLight = block.getPackedLight(0, 0, 0);
+    int facedLight = block.getPackedLight(faceVec.getX(), faceVec.getY(), faceVec.getZ());
 
-    int sunLight = Math.max(blockLight.getSkyLight(), facedLight.getSkyLight());
-    int blockLightLevel = Math.max(blockLight.getBlockLight(), facedLight.getBlockLight());
+    int sunLight = Math.max(TreeNeighborhood.skyLight(ownLight),
+        TreeNeighborhood.skyLight(facedLight));
+    int blockLightLevel = Math.max(TreeNeighborhood.blockLight(ownLight),
+        TreeNeighborhood.blockLight(facedLight));
 
     if (block.isRemoveIfCave()
         && (renderSettings.isCaveDetectionUsesBlockLight() ? Math.max(blockLightLevel, sunLight)
             : sunLight) == 0) {
+      referenceCaveRemoved++;
       return;
     }
 
-    blockModel.initialize();
+    int face1 = blockModel.getStart() + blockModel.getSize();
+    int face2 = face1 + 1;
     blockModel.add(2);
-
     TileModel tileModel = blockModel.getTileModel();
-    int face1 = blockModel.getStart();
-    int face2 = face1 + 1;
 
     // @formatter:off
     tileModel.setPositions(face1,
-      c0.x, c0.y, c0.z,
-      c1.x, c1.y, c1.z,
-      c2.x, c2.y, c2.z
+      corner(c0, 0), corner(c0, 1), corner(c0, 2),
+      corner(c1, 0), corner(c1, 1), corner(c1, 2),
+      corner(c2, 0), corner(c2, 1), corner(c2, 2)
     );
     tileModel.setPositions(face2,
-      c0.x, c0.y, c0.z,
-      c2.x, c2.y, c2.z,
-      c3.x, c3.y, c3.z
+      corner(c0, 0), corner(c0, 1), corner(c0, 2),
+      corner(c2, 0), corner(c2, 1), corner(c2, 2),
+      corner(c3, 0), corner(c3, 1), corner(c3, 2)
     );
     // @formatter:on
 
+    int textureId = texture == GeometryTemplate.RINGS ? ringsTextureId : barkTextureId;
     tileModel.setMaterialIndex(face1, textureId);
     tileModel.setMaterialIndex(face2, textureId);
 
-    float[][] uvs = calculateUVs(uvRotation, uvRect[0], uvRect[1]);
+    float[] uvs = calculateUVs(uvRotation, corner(c0, uAxis), corner(c0, vAxis),
+        corner(c2, uAxis), corner(c2, vAxis));
     // @formatter:off
     tileModel.setUvs(face1,
-      uvs[0][0], uvs[0][1],
-      uvs[1][0], uvs[1][1],
-      uvs[2][0], uvs[2][1]
+      uvs[0], uvs[1],
+      uvs[2], uvs[3],
+      uvs[4], uvs[5]
     );
     tileModel.setUvs(face2,
-      uvs[0][0], uvs[0][1],
-      uvs[2][0], uvs[2][1],
-      uvs[3][0], uvs[3][1]
+      uvs[0], uvs[1],
+      uvs[4], uvs[5],
+      uvs[6], uvs[7]
     );
     // @formatter:on
 
-    tileModel.setColor(face1, 1f, 1f, 1f);
-    tileModel.setColor(face2, 1f, 1f, 1f);
+    tileModel.setColor(face1, tint.r, tint.g, tint.b);
+    tileModel.setColor(face2, tint.r, tint.g, tint.b);
 
     tileModel.setBlocklight(face1, blockLightLevel);
     tileModel.setBlocklight(face2, blockLightLevel);
@@ -195,65 +491,120 @@ public abstract class AbstractDynamicTreeRenderer implements BlockRenderer {
     tileModel.setAOs(face2, 1f, 1f, 1f);
   }
 
-  protected MatrixM4f createScaleMatrix(float scale) {
-    return new MatrixM4f().scale(scale, scale, scale);
+  /**
+   * The coordinate of a box corner on the axis in block units. The corner takes the maximum of X,
+   * Y and Z by its bits 2, 4 and 1.
+   */
+  private float corner(int corner, int axis) {
+    int bit = axis == 0 ? 2 : (axis == 1 ? 4 : 1);
+    return ((corner & bit) != 0 ? box[axis + 3] : box[axis]) * BLOCK_SCALE;
   }
 
-  protected float[][] calculateUVs(int uvRotation, VectorM2f uv0, VectorM2f uv1) {
-    float minU = Math.min(uv0.x, uv1.x) * BLOCK_SCALE;
-    float minV = Math.min(uv0.y, uv1.y) * BLOCK_SCALE;
-    float maxU = Math.max(uv0.x, uv1.x) * BLOCK_SCALE;
-    float maxV = Math.max(uv0.y, uv1.y) * BLOCK_SCALE;
+  /**
+   * The UVs of the four corners of a face spanning from {@code (u0, v0)} to {@code (u1, v1)} in
+   * block units, rotated in steps of 90 degrees.
+   */
+  private float[] calculateUVs(int uvRotation, float u0, float v0, float u1, float v1) {
+    float minU = Math.min(u0, u1);
+    float minV = Math.min(v0, v1);
+    float maxU = Math.max(u0, u1);
+    float maxV = Math.max(v0, v1);
 
-    float[][] result = new float[4][2];
+    float[] result = referenceUvs;
 
     int steps = (uvRotation / 90) % 4;
     switch (steps) {
       case 0:
-        result[0][0] = minU;
-        result[0][1] = maxV;
-        result[1][0] = maxU;
-        result[1][1] = maxV;
-        result[2][0] = maxU;
-        result[2][1] = minV;
-        result[3][0] = minU;
-        result[3][1] = minV;
+        result[0] = minU;
+        result[1] = maxV;
+        result[2] = maxU;
+        result[3] = maxV;
+        result[4] = maxU;
+        result[5] = minV;
+        result[6] = minU;
+        result[7] = minV;
         break;
       case 1:
-        result[0][0] = minV;
-        result[0][1] = minU;
-        result[1][0] = minV;
-        result[1][1] = maxU;
-        result[2][0] = maxV;
-        result[2][1] = maxU;
-        result[3][0] = maxV;
-        result[3][1] = minU;
+        result[0] = minV;
+        result[1] = minU;
+        result[2] = minV;
+        result[3] = maxU;
+        result[4] = maxV;
+        result[5] = maxU;
+        result[6] = maxV;
+        result[7] = minU;
         break;
       case 2:
-        result[0][0] = maxU;
-        result[0][1] = minV;
-        result[1][0] = minU;
-        result[1][1] = minV;
-        result[2][0] = minU;
-        result[2][1] = maxV;
-        result[3][0] = maxU;
-        result[3][1] = maxV;
+        result[0] = maxU;
+        result[1] = minV;
+        result[2] = minU;
+        result[3] = minV;
+        result[4] = minU;
+        result[5] = maxV;
+        result[6] = maxU;
+        result[7] = maxV;
         break;
       case 3:
-        result[0][0] = maxV;
-        result[0][1] = maxU;
-        result[1][0] = maxV;
-        result[1][1] = minU;
-        result[2][0] = minV;
-        result[2][1] = minU;
-        result[3][0] = minV;
-        result[3][1] = maxU;
+      default:
+        result[0] = maxV;
+        result[1] = maxU;
+        result[2] = maxV;
+        result[3] = minU;
+        result[4] = minV;
+        result[5] = minU;
+        result[6] = minV;
+        result[7] = maxU;
         break;
     }
 
     return result;
   }
 
+  /**
+   * Reads the light of the block and its six neighbors once for all faces and decides which faces
+   * cave detection removes.
+   *
+   * @return {@code false} if cave detection removes every face of the block
+   */
+  protected boolean computeLight() {
+    int ownLight = block.getPackedLight(0, 0, 0);
+    boolean removeIfCave = block.isRemoveIfCave();
+    boolean useBlockLight = renderSettings.isCaveDetectionUsesBlockLight();
+    caveRemovedFaces = 0;
+
+    for (Direction dir : DIRECTIONS) {
+      int idx = dir.ordinal();
+      var vec = dir.toVector();
+      int facedLight = block.getPackedLight(vec.getX(), vec.getY(), vec.getZ());
+
+      int sunLight = Math.max(TreeNeighborhood.skyLight(ownLight),
+          TreeNeighborhood.skyLight(facedLight));
+      int blockLight = Math.max(TreeNeighborhood.blockLight(ownLight),
+          TreeNeighborhood.blockLight(facedLight));
+      faceSunLight[idx] = sunLight;
+      faceBlockLight[idx] = blockLight;
+
+      if (removeIfCave && (useBlockLight ? Math.max(blockLight, sunLight) : sunLight) == 0) {
+        caveRemovedFaces |= 1 << idx;
+      }
+    }
+
+    if (caveRemovedFaces == ALL_FACES) {
+      METRICS.skipped(RenderMetrics.Skip.CAVE_REMOVED);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Appends a value to a geometry cache key, returns -1 if the value does not fit into the key.
+   */
+  protected static long appendKey(long key, int value) {
+    if (key < 0 || value < 0 || value > KEY_VALUE_MASK)
+      return -1;
+    return (key << KEY_VALUE_BITS) | value;
+  }
+
   protected int getFaceAngle(Axis axis, Direction face) {
     if (axis == Axis.Y) {
       return 0;
@@ -273,64 +624,94 @@ public abstract class AbstractDynamicTreeRenderer implements BlockRenderer {
     }
   }
 
-  protected int getRadius(BlockState state) {
-    String radiusStr = state.getProperties().get("radius");
-    if (radiusStr == null)
-      return 0;
-    try {
-      return Integer.parseInt(radiusStr);
-    } catch (NumberFormatException e) {
-      return 0;
-    }
-  }
-
-  protected int[] getConnections(BlockState state) {
-    int[] connections = new int[6];
+  protected int[] getConnections(TreeBlockInfo info) {
+    int radius = info.radius();
+    occludedFaces = 0;
+    grid = TreeGrid.moveTo(block, blockIndex);
 
-    // Compute connections by querying neighbor block radii (like TreeHelper does)
-    for (Direction dir : Direction.values()) {
+    // Compute connections from the neighbor block radii (like TreeHelper does)
+    for (Direction dir : DIRECTIONS) {
       int idx = dir.ordinal();
+      connections[idx] = 0;
       var vec = dir.toVector();
-      var neighbor = block.getNeighborBlock(vec.getX(), vec.getY(), vec.getZ());
-
-      if (neighbor != null) {
-        BlockState neighborState = neighbor.getBlockState();
-        if (isSameSpecies(state, neighborState)) {
-          int neighborRadius = getRadius(neighborState);
-          if (neighborRadius > 0) {
-            connections[idx] = neighborRadius;
+      int neighbor = getNeighbor(vec.getX(), vec.getY(), vec.getZ());
+      TreeBlockInfo.Kind kind = TreeGrid.kind(neighbor);
+
+      if (TreeGrid.species(neighbor) == info.species()) {
+        int neighborRadius = TreeGrid.radius(neighbor);
+        if (neighborRadius > 0) {
+          connections[idx] = neighborRadius;
+          // A flush core hides all of a thick core's end, other neighbors only their own square
+          if (isFlushWith(radius, neighborRadius)) {
+            occludedFaces |= (1 | 1 << GeometryTemplate.BEYOND_BLOCK) << idx;
           }
-        } else if (isLeavesBlock(neighborState)) {
-          connections[idx] = 1;
-        } else if (dir == Direction.DOWN && isRootySoil(neighborState)) {
+        }
+      } else if (kind == TreeBlockInfo.Kind.LEAVES) {
+        connections[idx] = 1;
+        occludedFaces |= 1 << idx;
+      } else if (kind == TreeBlockInfo.Kind.ROOTY_SOIL) {
+        if (dir == Direction.DOWN) {
           // Connect to ground with core radius
-          connections[idx] = getRadius(state);
+          connections[idx] = radius;
         }
+        occludedFaces |= 1 << idx;
+      } else if (kind == TreeBlockInfo.Kind.OTHER
+          && block.isCulling(vec.getX(), vec.getY(), vec.getZ())) {
+        occludedFaces |= 1 << idx;
       }
     }
 
     return connections;
   }
 
-  protected boolean isSameSpecies(BlockState state1, BlockState state2) {
-    return state1.getId().equals(state2.getId());
+  /**
+   * The packed {@link TreeGrid} cell of the block at the offset. The reference profile reads it
+   * from the world instead of the grid.
+   */
+  protected int getNeighbor(int dx, int dy, int dz) {
+    if (!profile.reference())
+      return grid.get(dx, dy, dz);
+
+    return TreeGrid.pack(blockIndex.get(
+        block.getBlockStateAt(block.getX() + dx, block.getY() + dy, block.getZ() + dz)));
   }
 
-  protected boolean isLeavesBlock(BlockState state) {
-    return "dynamictrees".equals(state.getId().getNamespace())
-        && state.getId().getValue().contains("leaves");
+  /**
+   * Whether the face a block has on the boundary to a connected same species neighbor is covered by
+   * the neighbor in every detail the neighbor may be rendered with. Both sleeves use the smaller
+   * radius and a core of radius 8 or more covers any sleeve, but the end of such a core is only
+   * covered by a core at least as thick. The reduced detail leaves out thin sleeves and the minimal
+   * one all but the core box, which does not reach every connected neighbor.
+   */
+  protected boolean isFlushWith(int radius, int neighborRadius) {
+    if (radius >= 8 || neighborRadius >= 8)
+      return neighborRadius >= radius
+          && (lowestDetail != RenderProfile.Detail.MINIMAL
+              || neighborRadius >= fullProfile.trunkMinRadius());
+
+    switch (lowestDetail) {
+      case FULL:
+        return true;
+      case REDUCED:
+        return Math.min(radius, neighborRadius) >= fullProfile.sleeveMinRadius();
+      case MINIMAL:
+      default:
+        return false;
+    }
   }
 
-  protected boolean isRootySoil(BlockState state) {
-    return "dynamictrees".equals(state.getId().getNamespace())
-        && state.getId().getValue().contains("rooty");
+  /** Whether a neighbor that is no connected branch hides the face touching it. */
+  protected boolean isOccluding(int neighbor, int dx, int dy, int dz) {
+    TreeBlockInfo.Kind kind = TreeGrid.kind(neighbor);
+    return kind == TreeBlockInfo.Kind.LEAVES || kind == TreeBlockInfo.Kind.ROOTY_SOIL
+        || kind == TreeBlockInfo.Kind.OTHER && block.isCulling(dx, dy, dz);
   }
 
   protected Direction getSourceDir(int coreRadius, int[] connections) {
     int largestConnection = 0;
     Direction sourceDir = null;
 
-    for (Direction dir : Direction.values()) {
+    for (Direction dir : DIRECTIONS) {
       int connRadius = connections[dir.ordinal()];
       if (connRadius > largestConnection) {
         largestConnection = connRadius;
@@ -364,6 +745,14 @@ public abstract class AbstractDynamicTreeRenderer implements BlockRenderer {
     return numConnections == 1;
   }
 
+  /**
+   * Whether the template fits the profile's triangle budget, if not the block should be baked with
+   * the next lower detail.
+   */
+  protected boolean fitsBudget(GeometryTemplate template, RenderProfile.Detail detail) {
+    return detail == RenderProfile.Detail.MINIMAL || profile.fitsBudget(template.quadCount * 2);
+  }
+
   protected Direction getOpposite(Direction dir) {
     switch (dir) {
       case UP:
@@ -0,0 +1,74 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.LightData;
+import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
+
+/**
+ * Reusable {@link TreeNeighborhood} view of the {@link BlockNeighborhood} BlueMap renders.
+ */
+class BlueMapNeighborhood implements TreeNeighborhood {
+  private BlockNeighborhood block;
+  private Chunk chunk;
+  private int chunkX, chunkZ;
+
+  public BlueMapNeighborhood set(BlockNeighborhood block) {
+    this.block = block;
+    this.chunk = null;
+    return this;
+  }
+
+  @Override
+  public int getX() {
+    return block.getX();
+  }
+
+  @Override
+  public int getY() {
+    return block.getY();
+  }
+
+  @Override
+  public int getZ() {
+    return block.getZ();
+  }
+
+  @Override
+  public Object getChunk() {
+    return block.getChunk();
+  }
+
+  @Override
+  public BlockState getBlockState() {
+    return block.getBlockState();
+  }
+
+  @Override
+  public BlockState getBlockStateAt(int x, int y, int z) {
+    if (chunk == null || x >> 4 != chunkX || z >> 4 != chunkZ) {
+      chunkX = x >> 4;
+      chunkZ = z >> 4;
+      // The block already holds its own chunk, only other chunks are looked up in the world
+      chunk = chunkX == block.getX() >> 4 && chunkZ == block.getZ() >> 4 ? block.getChunk()
+          : block.getWorld().getChunkAtBlock(x, z);
+    }
+    return chunk.getBlockState(x, y, z);
+  }
+
+  @Override
+  public int getPackedLight(int dx, int dy, int dz) {
+    LightData light = block.getNeighborBlock(dx, dy, dz).getLightData();
+    return light.getSkyLight() << 4 | light.getBlockLight();
+  }
+
+  @Override
+  public boolean isCulling(int dx, int dy, int dz) {
+    return block.getNeighborBlock(dx, dy, dz).getProperties().isCulling();
+  }
+
+  @Override
+  public boolean isRemoveIfCave() {
+    return block.isRemoveIfCave();
+  }
+}
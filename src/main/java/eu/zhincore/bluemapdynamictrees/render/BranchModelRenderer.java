@@ -4,106 +4,330 @@ import de.bluecolored.bluemap.core.map.TextureGallery;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
 import de.bluecolored.bluemap.core.map.hires.TileModelView;
 import de.bluecolored.bluemap.core.map.hires.block.BlockRendererType;
-import de.bluecolored.bluemap.core.resources.ResourcePath;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePack;
-import de.bluecolored.bluemap.core.resources.pack.resourcepack.blockstate.Variant;
-import de.bluecolored.bluemap.core.resources.pack.resourcepack.texture.Texture;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.util.Key;
 import de.bluecolored.bluemap.core.util.math.Axis;
 import de.bluecolored.bluemap.core.util.math.Color;
-import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
+import java.util.concurrent.ConcurrentHashMap;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
 import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockInfo;
 
 public class BranchModelRenderer extends AbstractDynamicTreeRenderer {
   public static final BlockRendererType TYPE = new BlockRendererType.Impl(
       new Key("bluemapmodeladdon", "dt_branch"), BranchModelRenderer::new);
 
+  private static final ConcurrentHashMap<RenderProfile, GeometryCache> GEOMETRY_CACHES =
+      new ConcurrentHashMap<>();
+
+  private LocalGeometryCache geometryCache = createGeometryCache(fullProfile);
+  private LocalGeometryCache degradedGeometryCache = degradedProfile == fullProfile
+      ? geometryCache
+      : createGeometryCache(degradedProfile);
+
   public BranchModelRenderer(ResourcePack resourcePack, TextureGallery textureGallery,
       RenderSettings renderSettings) {
     super(resourcePack, textureGallery, renderSettings);
   }
 
+  public BranchModelRenderer(DynamicTreesPack dynamicTreesPack, TextureGallery textureGallery,
+      RenderSettings renderSettings) {
+    super(dynamicTreesPack, textureGallery, renderSettings);
+  }
+
+  private static LocalGeometryCache createGeometryCache(RenderProfile profile) {
+    return new LocalGeometryCache(
+        GEOMETRY_CACHES.computeIfAbsent(profile, p -> new GeometryCache(GEOMETRY_CACHE_SIZE)));
+  }
+
+  @Override
+  protected void profileChanged() {
+    geometryCache = createGeometryCache(fullProfile);
+    degradedGeometryCache = degradedProfile == fullProfile
+        ? geometryCache
+        : createGeometryCache(degradedProfile);
+  }
+
+  @Override
+  protected LoaderType getLoaderType() {
+    return LoaderType.BRANCH;
+  }
+
   @Override
-  public void render(BlockNeighborhood block, Variant variant, TileModelView blockModel,
-      Color color) {
+  public void render(TreeNeighborhood block, BranchModelExtension model,
+      TileModelView blockModel, Color color) {
     this.block = block;
     this.blockModel = blockModel;
     this.blockColor = color;
-    this.blockColorOpacity = 0f;
-
-    BranchModelExtension model = dynamicTreesResourcePack.getModels().get(variant.getModel());
 
-    if (model == null)
+    resolveTextures(model);
+    if (barkTextureId < 0 || ringsTextureId < 0) {
+      METRICS.skipped(RenderMetrics.Skip.MISSING_TEXTURE);
       return;
+    }
 
-    ResourcePath<Texture> barkPath = model.getBarkTexture().getTexturePath();
-    ResourcePath<Texture> ringsPath = model.getRingsTexture().getTexturePath();
+    TreeBlockInfo info = getInfo(block.getBlockState());
+    int radius = info.radius();
+    if (radius < 1) {
+      METRICS.skipped(RenderMetrics.Skip.NO_RADIUS);
+      return;
+    }
 
-    if (barkPath == null || ringsPath == null)
+    if (!computeLight())
       return;
 
-    int barkTextureId = textureGallery.get(barkPath);
-    int ringsTextureId = textureGallery.get(ringsPath);
+    int[] connections = getConnections(info);
 
-    int radius = getRadius(block.getBlockState());
-    if (radius < 1)
-      return;
+    boolean rendered;
+    if (profile.reference()) {
+      beginReference();
+      bake(profile.detail(), radius, connections);
+      rendered = endReference();
+    } else {
+      long key = appendKey(0, radius);
+      for (int connection : connections) {
+        key = appendKey(key, connection);
+      }
+
+      LocalGeometryCache cache = profile == fullProfile ? geometryCache : degradedGeometryCache;
+      GeometryTemplate template = key < 0 ? null : cache.get(key);
+      if (template == null) {
+        template = bakeGeometry(radius, connections);
+        if (key >= 0) {
+          template = cache.put(key, template);
+        }
+      }
 
-    int[] connections = getConnections(block.getBlockState());
+      renderGeometry(template, barkTextureId, ringsTextureId);
+      rendered = template.quadCount > 0;
+    }
+
+    // From above a vertical branch without a connection up shows its rings
+    boolean vertical = connections[Direction.UP.ordinal()] > 0
+        || connections[Direction.DOWN.ordinal()] > 0;
+    if (rendered) {
+      setMapColor(vertical && connections[Direction.UP.ordinal()] == 0 ? ringsColor : barkColor,
+          radius, vertical);
+    }
+  }
+
+  private GeometryTemplate bakeGeometry(int radius, int[] connections) {
+    RenderProfile.Detail detail = profile.detail();
+    while (true) {
+      geometry.reset();
+      bake(detail, radius, connections);
+
+      GeometryTemplate template = geometry.build();
+      if (fitsBudget(template, detail))
+        return template;
+      detail = detail.lower();
+    }
+  }
+
+  private void bake(RenderProfile.Detail detail, int radius, int[] connections) {
+    switch (detail) {
+      case FULL:
+        bakeFull(radius, connections);
+        break;
+      case REDUCED:
+        bakeReduced(radius, connections);
+        break;
+      case MINIMAL:
+      default:
+        bakeMinimal(radius, connections);
+        break;
+    }
+  }
 
-    int modelStart = blockModel.getStart();
+  private void bakeFull(int radius, int[] connections) {
+    // The sleeves of a block inside a straight run are as thick as its core, together they are the
+    // single box the reduced detail renders. The run is still rendered block by block.
+    if (profile.mergeTrunks()) {
+      int runAxis = getRunAxis(radius, connections);
+      if (runAxis >= 0) {
+        renderBranchBox(radius, runAxis, connections, radius);
+        return;
+      }
+    }
 
     Direction sourceDir = getSourceDir(radius, connections);
     int coreAxis = resolveCoreAxis(sourceDir);
     boolean hasRingEnd = shouldRenderRingEnd(connections, sourceDir);
 
-    renderCore(radius, coreAxis, barkTextureId, ringsTextureId, connections,
-        hasRingEnd ? getOpposite(sourceDir) : null);
+    // The reference keeps the core faces under sleeves
+    int coveredFaces = 0;
+    if (radius < 8 && !profile.reference()) {
+      for (Direction dir : DIRECTIONS) {
+        if (connections[dir.ordinal()] >= radius) {
+          coveredFaces |= 1 << dir.ordinal();
+        }
+      }
+    }
+
+    renderCore(radius, coreAxis, coveredFaces, hasRingEnd ? getOpposite(sourceDir) : null);
 
     if (radius < 8) {
-      for (Direction dir : Direction.values()) {
+      for (Direction dir : DIRECTIONS) {
         int connRadius = connections[dir.ordinal()];
 
         if (connRadius > 0) {
-          renderSleeve(connRadius, dir, barkTextureId);
+          renderSleeve(radius, connRadius, dir);
         }
       }
     }
+  }
 
-    if (color.a > 0) {
-      color.flatten().straight();
-      color.a = blockColorOpacity;
+  private void bakeReduced(int radius, int[] connections) {
+    int straightAxis = getStraightAxis(radius, connections);
+    if (straightAxis >= 0) {
+      renderBranchBox(radius, straightAxis, connections, radius);
+      return;
+    }
+
+    int coreAxis = resolveCoreAxis(getSourceDir(radius, connections));
+
+    int sleeves = 0;
+    int coveredFaces = 0;
+    if (radius < 8) {
+      for (Direction dir : DIRECTIONS) {
+        int connRadius = connections[dir.ordinal()];
+
+        if (connRadius > 0 && Math.min(radius, connRadius) >= profile.sleeveMinRadius()) {
+          sleeves |= 1 << dir.ordinal();
+          if (connRadius >= radius && !profile.reference()) {
+            coveredFaces |= 1 << dir.ordinal();
+          }
+        }
+      }
+    }
+
+    renderCore(radius, coreAxis, coveredFaces, null);
+
+    for (Direction dir : DIRECTIONS) {
+      if ((sleeves & (1 << dir.ordinal())) != 0) {
+        renderSleeve(radius, connections[dir.ordinal()], dir);
+      }
     }
+  }
 
-    blockModel.initialize(modelStart);
-    blockModel.transform(createScaleMatrix(BLOCK_SCALE));
+  private void bakeMinimal(int radius, int[] connections) {
+    if (radius < profile.trunkMinRadius())
+      return;
+
+    int coreAxis = resolveCoreAxis(getSourceDir(radius, connections));
+    renderBranchBox(radius, coreAxis, connections, profile.trunkMinRadius());
+  }
+
+  /**
+   * The axis all connections lie on if each of them is at least as thick as the core, so the core
+   * and its sleeves form a single box. -1 otherwise.
+   */
+  private int getStraightAxis(int radius, int[] connections) {
+    if (radius >= 8)
+      return -1;
+
+    int axis = -1;
+    for (Direction dir : DIRECTIONS) {
+      int connRadius = connections[dir.ordinal()];
+      if (connRadius == 0)
+        continue;
+
+      int dirAxis = resolveCoreAxis(dir);
+      if (connRadius < radius || (axis >= 0 && axis != dirAxis))
+        return -1;
+      axis = dirAxis;
+    }
+    return axis;
   }
 
-  private void renderCore(int radius, int axis, int barkTextureId, int ringsTextureId,
-      int[] connections, Direction ringDir) {
+  /**
+   * The axis of a straight run the block lies inside, connected on both ends of it and nowhere
+   * else. -1 otherwise, run ends keep their ring end.
+   */
+  private int getRunAxis(int radius, int[] connections) {
+    int axis = getStraightAxis(radius, connections);
+    switch (axis) {
+      case 0:
+        return connections[Direction.DOWN.ordinal()] > 0
+            && connections[Direction.UP.ordinal()] > 0 ? axis : -1;
+      case 1:
+        return connections[Direction.NORTH.ordinal()] > 0
+            && connections[Direction.SOUTH.ordinal()] > 0 ? axis : -1;
+      case 2:
+        return connections[Direction.WEST.ordinal()] > 0
+            && connections[Direction.EAST.ordinal()] > 0 ? axis : -1;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Renders the core as a single box that reaches the block boundary on both ends of the axis where
+   * the connection is at least {@code minConnection} thick.
+   */
+  private void renderBranchBox(int radius, int axis, int[] connections, int minConnection) {
+    float min = 8 - radius;
+    float max = 8 + radius;
+    float minX = min, minY = Math.max(0, min), minZ = min;
+    float maxX = max, maxY = Math.min(16, max), maxZ = max;
+
+    switch (axis) {
+      case 0:
+        minY = connections[Direction.DOWN.ordinal()] >= minConnection ? 0 : minY;
+        maxY = connections[Direction.UP.ordinal()] >= minConnection ? 16 : maxY;
+        break;
+      case 1:
+        minZ = connections[Direction.NORTH.ordinal()] >= minConnection ? 0 : minZ;
+        maxZ = connections[Direction.SOUTH.ordinal()] >= minConnection ? 16 : maxZ;
+        break;
+      case 2:
+      default:
+        minX = connections[Direction.WEST.ordinal()] >= minConnection ? 0 : minX;
+        maxX = connections[Direction.EAST.ordinal()] >= minConnection ? 16 : maxX;
+        break;
+    }
+
+    setCorners(minX, minY, minZ, maxX, maxY, maxZ);
+
+    Axis axisEnum = axis == 0 ? Axis.Y : (axis == 1 ? Axis.Z : Axis.X);
+    for (Direction face : DIRECTIONS) {
+      // A thinner neighbor's face doesn't cover the box end, keep it even if the neighbor is flush
+      int connRadius = connections[face.ordinal()];
+      geometry.setCullable(connRadius == 0 || connRadius >= radius);
+      renderBoxFace(face, GeometryTemplate.BARK, getFaceAngle(axisEnum, face));
+    }
+    geometry.setCullable(true);
+  }
+
+  private void renderCore(int radius, int axis, int coveredFaces, Direction ringDir) {
     float min = 8 - radius;
     float max = 8 + radius;
 
     setCorners(min, Math.max(0, min), min, max, Math.min(16, max), max);
 
-    for (Direction face : Direction.values()) {
+    for (Direction face : DIRECTIONS) {
+      // A sleeve as thick as the core covers the whole core face. A thinner sleeve only covers
+      // its center, trimming would leave a frame of more triangles than the face itself.
+      if ((coveredFaces & (1 << face.ordinal())) != 0)
+        continue;
+
       boolean useRings = ringDir != null && ringDir == face;
-      int textureId = useRings ? ringsTextureId : barkTextureId;
+      int texture = useRings ? GeometryTemplate.RINGS : GeometryTemplate.BARK;
 
       Axis axisEnum = axis == 0 ? Axis.Y : (axis == 1 ? Axis.Z : Axis.X);
-      renderBoxFace(face, textureId, getFaceAngle(axisEnum, face), radius, 0);
+      renderBoxFace(face, texture, getFaceAngle(axisEnum, face));
     }
   }
 
-  private void renderSleeve(int neighborRadius, Direction dir, int textureId) {
-    int coreRadius = getRadius(block.getBlockState());
-
+  private void renderSleeve(int coreRadius, int neighborRadius, Direction dir) {
     // Sleeve tapers from core radius at the core boundary to neighbor radius at
     // block edge
     // Use the smaller of the two for the sleeve cross-section
     int sleeveRadius = Math.min(coreRadius, neighborRadius);
-    int squish = coreRadius - sleeveRadius;
 
     float minX, maxX, minY, maxY, minZ, maxZ;
 
@@ -162,14 +386,14 @@ public class BranchModelRenderer extends AbstractDynamicTreeRenderer {
     setCorners(minX, minY, minZ, maxX, maxY, maxZ);
 
     Direction opposite = getOpposite(dir);
-    for (Direction face : Direction.values()) {
+    for (Direction face : DIRECTIONS) {
       // Skip the face pointing back to the core, but render the face toward the
       // neighbor
       if (face == opposite)
         continue;
 
       int angle = getFaceAngle(dir.getAxis(), face);
-      renderBoxFace(face, textureId, angle, sleeveRadius, squish);
+      renderBoxFace(face, GeometryTemplate.BARK, angle);
     }
   }
 
@@ -0,0 +1,222 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import java.util.Arrays;
+import de.bluecolored.bluemap.core.util.Direction;
+
+/**
+ * Collects the quads of a single block model and bakes them into a {@link GeometryTemplate}.
+ */
+class GeometryBuilder {
+  private static final int INITIAL_CAPACITY = 64;
+  /**
+   * Whether box faces are written by {@link VectorBoxFaces}, if BlueMap's JVM was started with
+   * {@code --add-modules jdk.incubator.vector} on a CPU with wide enough vectors. The face switch
+   * writes them otherwise.
+   */
+  static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector")
+      .isPresent() && VectorBoxFaces.isSupported();
+
+  private float[] positions = new float[INITIAL_CAPACITY * GeometryTemplate.POSITION_STRIDE];
+  private float[] uvs = new float[INITIAL_CAPACITY * GeometryTemplate.UV_STRIDE];
+  private Direction[] faces = new Direction[INITIAL_CAPACITY];
+  private byte[] textures = new byte[INITIAL_CAPACITY];
+  private byte[] boundaries = new byte[INITIAL_CAPACITY];
+  private int quadCount;
+  private boolean cullable = true;
+
+  public void reset() {
+    quadCount = 0;
+    cullable = true;
+  }
+
+  /** Whether quads added from now on may be culled by the block they touch. */
+  public void setCullable(boolean cullable) {
+    this.cullable = cullable;
+  }
+
+  /**
+   * Adds one face of a box, {@code box} holds the minimum corner followed by the maximum corner in
+   * model units. The UVs span the box along the axes of the face and are rotated in steps of 90
+   * degrees.
+   */
+  public void addBoxFace(Direction face, int texture, float[] box, int uvRotation) {
+    ensureCapacity(quadCount + 1);
+
+    if (VECTORIZED) {
+      VectorBoxFaces.write(face, box, uvRotation,
+          positions, quadCount * GeometryTemplate.POSITION_STRIDE,
+          uvs, quadCount * GeometryTemplate.UV_STRIDE);
+      int f = face.ordinal();
+      int side = VectorBoxFaces.SIDE[f];
+      int u = VectorBoxFaces.U_AXIS[f];
+      int v = VectorBoxFaces.V_AXIS[f];
+      addFace(face, texture, box[side], side >= 3, box[u], box[u + 3], box[v], box[v + 3]);
+      return;
+    }
+
+    float minX = box[0], minY = box[1], minZ = box[2];
+    float maxX = box[3], maxY = box[4], maxZ = box[5];
+    int p = quadCount * GeometryTemplate.POSITION_STRIDE;
+    float side, u0, u1, v0, v1;
+    boolean positive;
+
+    switch (face) {
+      case DOWN:
+        setCorner(p, minX, minY, minZ);
+        setCorner(p + 3, maxX, minY, minZ);
+        setCorner(p + 6, maxX, minY, maxZ);
+        setCorner(p + 9, minX, minY, maxZ);
+        side = minY;
+        positive = false;
+        u0 = minX;
+        u1 = maxX;
+        v0 = minZ;
+        v1 = maxZ;
+        break;
+      case UP:
+        setCorner(p, minX, maxY, maxZ);
+        setCorner(p + 3, maxX, maxY, maxZ);
+        setCorner(p + 6, maxX, maxY, minZ);
+        setCorner(p + 9, minX, maxY, minZ);
+        side = maxY;
+        positive = true;
+        u0 = minX;
+        u1 = maxX;
+        v0 = minZ;
+        v1 = maxZ;
+        break;
+      case NORTH:
+        setCorner(p, maxX, minY, minZ);
+        setCorner(p + 3, minX, minY, minZ);
+        setCorner(p + 6, minX, maxY, minZ);
+        setCorner(p + 9, maxX, maxY, minZ);
+        side = minZ;
+        positive = false;
+        u0 = minX;
+        u1 = maxX;
+        v0 = minY;
+        v1 = maxY;
+        break;
+      case SOUTH:
+        setCorner(p, minX, minY, maxZ);
+        setCorner(p + 3, maxX, minY, maxZ);
+        setCorner(p + 6, maxX, maxY, maxZ);
+        setCorner(p + 9, minX, maxY, maxZ);
+        side = maxZ;
+        positive = true;
+        u0 = minX;
+        u1 = maxX;
+        v0 = minY;
+        v1 = maxY;
+        break;
+      case WEST:
+        setCorner(p, minX, minY, minZ);
+        setCorner(p + 3, minX, minY, maxZ);
+        setCorner(p + 6, minX, maxY, maxZ);
+        setCorner(p + 9, minX, maxY, minZ);
+        side = minX;
+        positive = false;
+        u0 = minZ;
+        u1 = maxZ;
+        v0 = minY;
+        v1 = maxY;
+        break;
+      default:
+        setCorner(p, maxX, minY, maxZ);
+        setCorner(p + 3, maxX, minY, minZ);
+        setCorner(p + 6, maxX, maxY, minZ);
+        setCorner(p + 9, maxX, maxY, maxZ);
+        side = maxX;
+        positive = true;
+        u0 = minZ;
+        u1 = maxZ;
+        v0 = minY;
+        v1 = maxY;
+        break;
+    }
+
+    float scale = AbstractDynamicTreeRenderer.BLOCK_SCALE;
+    float minU = Math.min(u0, u1) * scale;
+    float minV = Math.min(v0, v1) * scale;
+    float maxU = Math.max(u0, u1) * scale;
+    float maxV = Math.max(v0, v1) * scale;
+    int u = quadCount * GeometryTemplate.UV_STRIDE;
+    switch ((uvRotation / 90) & 3) {
+      case 0:
+        setUvs(u, minU, maxV, maxU, maxV, maxU, minV, minU, minV);
+        break;
+      case 1:
+        setUvs(u, minV, minU, minV, maxU, maxV, maxU, maxV, minU);
+        break;
+      case 2:
+        setUvs(u, maxU, minV, minU, minV, minU, maxV, maxU, maxV);
+        break;
+      default:
+        setUvs(u, maxV, maxU, maxV, minU, minV, minU, minV, maxU);
+        break;
+    }
+    addFace(face, texture, side, positive, u0, u1, v0, v1);
+  }
+
+  /** Adds the face written last, lying on {@code side} of the box with the UVs spanning the box. */
+  private void addFace(Direction face, int texture, float side, boolean positive, float u0,
+      float u1, float v0, float v1) {
+    // The sides of cores thicker than a block lie in the neighbors, not on the shared boundary
+    boolean onBoundary = positive ? side == 16 : side == 0;
+    boolean insideBlock = u0 >= 0 && u1 <= 16 && v0 >= 0 && v1 <= 16;
+    faces[quadCount] = face;
+    textures[quadCount] = (byte) texture;
+    if (!cullable || !onBoundary) {
+      boundaries[quadCount] = GeometryTemplate.NO_BOUNDARY;
+    } else {
+      int f = face.ordinal();
+      boundaries[quadCount] = (byte) (insideBlock ? f : f + GeometryTemplate.BEYOND_BLOCK);
+    }
+    quadCount++;
+  }
+
+  /** Bakes the collected quads, scaling their positions from model to block units. */
+  public GeometryTemplate build() {
+    float[] blockPositions = new float[quadCount * GeometryTemplate.POSITION_STRIDE];
+    for (int i = 0; i < blockPositions.length; i++) {
+      blockPositions[i] = positions[i] * AbstractDynamicTreeRenderer.BLOCK_SCALE;
+    }
+
+    return new GeometryTemplate(quadCount, blockPositions,
+        Arrays.copyOf(uvs, quadCount * GeometryTemplate.UV_STRIDE),
+        Arrays.copyOf(faces, quadCount),
+        Arrays.copyOf(textures, quadCount),
+        Arrays.copyOf(boundaries, quadCount));
+  }
+
+  private void ensureCapacity(int quads) {
+    if (quads <= faces.length)
+      return;
+
+    int capacity = Math.max(quads, faces.length * 2);
+    positions = Arrays.copyOf(positions, capacity * GeometryTemplate.POSITION_STRIDE);
+    uvs = Arrays.copyOf(uvs, capacity * GeometryTemplate.UV_STRIDE);
+    faces = Arrays.copyOf(faces, capacity);
+    textures = Arrays.copyOf(textures, capacity);
+    boundaries = Arrays.copyOf(boundaries, capacity);
+  }
+
+  private void setCorner(int p, float x, float y, float z) {
+    positions[p] = x;
+    positions[p + 1] = y;
+    positions[p + 2] = z;
+  }
+
+  private void setUvs(int u, float u1, float v1, float u2, float v2, float u3, float v3, float u4,
+      float v4) {
+    float[] uvs = this.uvs;
+    uvs[u] = u1;
+    uvs[u + 1] = v1;
+    uvs[u + 2] = u2;
+    uvs[u + 3] = v2;
+    uvs[u + 4] = u3;
+    uvs[u + 5] = v3;
+    uvs[u + 6] = u4;
+    uvs[u + 7] = v4;
+  }
+}
@@ -0,0 +1,109 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Thread-safe cache of baked {@link GeometryTemplate}s, shared by all renderer instances. Templates
+ * are added lazily and the least recently used ones are evicted once the cache outgrows its
+ * maximum size.
+ */
+final class GeometryCache {
+  private final int maxSize;
+  private final ConcurrentHashMap<TemplateKey, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong clock = new AtomicLong();
+  private final Object evictionLock = new Object();
+
+  GeometryCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** Looks the template up, the key is only read so the caller may reuse it for the next lookup. */
+  public @Nullable GeometryTemplate get(TemplateKey key) {
+    Entry entry = entries.get(key);
+    if (entry == null)
+      return null;
+
+    // The clock only moves on inserts, skip the write so readers on other threads don't keep
+    // invalidating the entry's cache line
+    long now = clock.get();
+    if (entry.lastUsed != now) {
+      entry.lastUsed = now;
+    }
+    return entry.template;
+  }
+
+  /**
+   * Adds a template unless another thread was faster, returns the template that ended up in the
+   * cache.
+   */
+  public GeometryTemplate put(long key, GeometryTemplate template) {
+    Entry entry = new Entry(template, clock.incrementAndGet());
+    Entry existing = entries.putIfAbsent(new TemplateKey(key), entry);
+    if (existing != null) {
+      existing.lastUsed = entry.lastUsed;
+      return existing.template;
+    }
+
+    if (entries.size() > maxSize) {
+      evict();
+    }
+    return template;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void evict() {
+    synchronized (evictionLock) {
+      int excess = entries.size() - maxSize;
+      if (excess <= 0)
+        return;
+
+      // Drop a quarter of the cache at once so the sort is amortized over many inserts
+      int toRemove = Math.max(excess, maxSize / 4);
+      List<Map.Entry<TemplateKey, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+      snapshot.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+
+      for (int i = 0; i < toRemove && i < snapshot.size(); i++) {
+        Map.Entry<TemplateKey, Entry> eldest = snapshot.get(i);
+        entries.remove(eldest.getKey(), eldest.getValue());
+      }
+    }
+  }
+
+  /** The key of a template, mutable so lookups don't have to box it. */
+  static final class TemplateKey {
+    long value;
+
+    TemplateKey(long value) {
+      this.value = value;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof TemplateKey other && other.value == value;
+    }
+  }
+
+  private static final class Entry {
+    final GeometryTemplate template;
+    volatile long lastUsed;
+
+    Entry(GeometryTemplate template, long lastUsed) {
+      this.template = template;
+      this.lastUsed = lastUsed;
+    }
+  }
+}
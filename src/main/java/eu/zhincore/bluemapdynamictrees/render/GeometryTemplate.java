@@ -0,0 +1,45 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import de.bluecolored.bluemap.core.util.Direction;
+
+/**
+ * Immutable, pre-baked quads of a Dynamic Trees block model. Positions are in block units and
+ * together with UVs final, only lighting and texture ids are applied when the template is written
+ * into a tile model.
+ */
+final class GeometryTemplate {
+  static final int BARK = 0;
+  static final int RINGS = 1;
+
+  /** Marks quads that do not lie on the block boundary. */
+  static final byte NO_BOUNDARY = -1;
+  /**
+   * Added to the boundary of quads reaching past the block, the ends of cores thicker than a
+   * block. Only a neighbor covering more than the shared square hides them.
+   */
+  static final int BEYOND_BLOCK = 6;
+
+  static final int POSITION_STRIDE = 12;
+  static final int UV_STRIDE = 8;
+
+  final int quadCount;
+  final float[] positions;
+  final float[] uvs;
+  final Direction[] faces;
+  final byte[] textures;
+  /**
+   * The direction ordinal of the block boundary a quad lies on, plus {@link #BEYOND_BLOCK} if it
+   * reaches past the block, or {@link #NO_BOUNDARY}.
+   */
+  final byte[] boundaries;
+
+  GeometryTemplate(int quadCount, float[] positions, float[] uvs, Direction[] faces,
+      byte[] textures, byte[] boundaries) {
+    this.quadCount = quadCount;
+    this.positions = positions;
+    this.uvs = uvs;
+    this.faces = faces;
+    this.textures = textures;
+    this.boundaries = boundaries;
+  }
+}
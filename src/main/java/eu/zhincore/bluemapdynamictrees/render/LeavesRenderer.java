@@ -0,0 +1,196 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.map.hires.block.BlockRenderer;
+import de.bluecolored.bluemap.core.map.hires.block.BlockRendererType;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.BlockColorCalculatorFactory;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.blockstate.Variant;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.Key;
+import de.bluecolored.bluemap.core.util.math.Color;
+import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPackFactory;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockInfo;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Renders Dynamic Trees leaves as a cube without the faces between leaves and the blocks covering
+ * them. In the canopy mode faces looking into holes inside the canopy are left out too, so only the
+ * outer shell of a leaf cluster remains.
+ */
+public class LeavesRenderer extends AbstractDynamicTreeRenderer {
+  public static final BlockRendererType TYPE = new BlockRendererType.Impl(
+      new Key("bluemapmodeladdon", "dt_leaves"), LeavesRenderer::new);
+
+  /** How many blocks behind a face the canopy mode looks for more leaves. */
+  private static final int CANOPY_DEPTH = 4;
+
+  /** Minecraft's foliage color where no biome colors are available. */
+  private static final float DEFAULT_FOLIAGE_RED = 0x48 / 255f;
+  private static final float DEFAULT_FOLIAGE_GREEN = 0xB5 / 255f;
+  private static final float DEFAULT_FOLIAGE_BLUE = 0x18 / 255f;
+
+  /** A block sized cube, its hidden faces are left out when it is rendered. */
+  private static final GeometryTemplate CUBE = createCube();
+
+  private final @Nullable BlockRenderer vanillaRenderer;
+  private final @Nullable BlockColorCalculatorFactory.BlockColorCalculator colorCalculator;
+
+  public LeavesRenderer(ResourcePack resourcePack, TextureGallery textureGallery,
+      RenderSettings renderSettings) {
+    this(resourcePack.getExtension(DynamicTreesPackFactory.INSTANCE), resourcePack,
+        textureGallery, renderSettings);
+  }
+
+  public LeavesRenderer(DynamicTreesPack dynamicTreesPack, TextureGallery textureGallery,
+      RenderSettings renderSettings) {
+    this(dynamicTreesPack, null, textureGallery, renderSettings);
+  }
+
+  private LeavesRenderer(DynamicTreesPack dynamicTreesPack, @Nullable ResourcePack resourcePack,
+      TextureGallery textureGallery, RenderSettings renderSettings) {
+    super(dynamicTreesPack, textureGallery, renderSettings);
+
+    if (resourcePack != null) {
+      this.vanillaRenderer = BlockRendererType.DEFAULT.create(resourcePack, textureGallery,
+          renderSettings);
+      this.colorCalculator = resourcePack.getColorCalculatorFactory().createCalculator();
+    } else {
+      this.vanillaRenderer = null;
+      this.colorCalculator = null;
+      tint.set(DEFAULT_FOLIAGE_RED, DEFAULT_FOLIAGE_GREEN, DEFAULT_FOLIAGE_BLUE, 1f, true);
+    }
+  }
+
+  private static GeometryTemplate createCube() {
+    GeometryBuilder builder = new GeometryBuilder();
+    float[] box = { 0, 0, 0, 16, 16, 16 };
+    for (Direction face : DIRECTIONS) {
+      builder.addBoxFace(face, GeometryTemplate.BARK, box, 0);
+    }
+    return builder.build();
+  }
+
+  @Override
+  protected LoaderType getLoaderType() {
+    return LoaderType.LEAVES;
+  }
+
+  @Override
+  public void render(BlockNeighborhood block, Variant variant, TileModelView blockModel,
+      Color color) {
+    checkWorld(block);
+    if (vanillaRenderer != null && fullProfile.leaves() == RenderProfile.Leaves.VANILLA) {
+      vanillaRenderer.render(block, variant, blockModel, color);
+      return;
+    }
+
+    if (colorCalculator != null) {
+      tint.set(1f, 1f, 1f, 1f, true);
+      colorCalculator.getBlockColor(block, tint);
+    }
+    super.render(block, variant, blockModel, color);
+  }
+
+  @Override
+  public void render(TreeNeighborhood block, BranchModelExtension model,
+      TileModelView blockModel, Color color) {
+    this.block = block;
+    this.blockModel = blockModel;
+    this.blockColor = color;
+
+    resolveTextures(model);
+    if (barkTextureId < 0) {
+      METRICS.skipped(RenderMetrics.Skip.MISSING_TEXTURE);
+      return;
+    }
+
+    if (profile.reference()) {
+      beginReference();
+      setCorners(0, 0, 0, 16, 16, 16);
+      for (Direction face : DIRECTIONS) {
+        renderBoxFace(face, GeometryTemplate.BARK, 0);
+      }
+      if (endReference()) {
+        setLeavesColor(color);
+      }
+      return;
+    }
+
+    grid = TreeGrid.moveTo(block, blockIndex);
+    occludedFaces = getHiddenFaces();
+    if (occludedFaces == ALL_FACES) {
+      METRICS.skipped(RenderMetrics.Skip.HIDDEN);
+      return;
+    }
+
+    if (!computeLight())
+      return;
+
+    renderGeometry(CUBE, barkTextureId, barkTextureId);
+    setLeavesColor(color);
+  }
+
+  private void setLeavesColor(Color color) {
+    color.set(barkColor.r * tint.r, barkColor.g * tint.g, barkColor.b * tint.b,
+        barkColor.a > 0 ? 1f : 0f, false);
+  }
+
+  private int getHiddenFaces() {
+    boolean canopy = profile.leaves() == RenderProfile.Leaves.CANOPY;
+
+    int hidden = 0;
+    for (Direction dir : DIRECTIONS) {
+      var vec = dir.toVector();
+      int dx = vec.getX(), dy = vec.getY(), dz = vec.getZ();
+      if (isCovering(getNeighbor(dx, dy, dz), dx, dy, dz)
+          || canopy && isInsideCanopy(dx, dy, dz)) {
+        hidden |= 1 << dir.ordinal();
+      }
+    }
+    return hidden;
+  }
+
+  /**
+   * Whether the neighbor hides the whole face touching it. Branches and roots only do with a full
+   * core drawn in every detail they may be rendered with, the minimal detail has no roots.
+   */
+  private boolean isCovering(int neighbor, int dx, int dy, int dz) {
+    if (isOccluding(neighbor, dx, dy, dz))
+      return true;
+
+    int radius = TreeGrid.radius(neighbor);
+    if (radius < 8)
+      return false;
+    if (lowestDetail != RenderProfile.Detail.MINIMAL)
+      return true;
+    return TreeGrid.kind(neighbor) == TreeBlockInfo.Kind.BRANCH
+        && radius >= fullProfile.trunkMinRadius();
+  }
+
+  /**
+   * Whether more leaves of the same species lie behind the neighbor in the direction, the face then
+   * only looks into a hole inside the canopy. Gaps between the canopies of different species stay
+   * visible. Looks no further than the grid reaches.
+   */
+  private boolean isInsideCanopy(int dx, int dy, int dz) {
+    int species = TreeGrid.species(getNeighbor(0, 0, 0));
+    for (int i = 2; i <= CANOPY_DEPTH; i++) {
+      if (!grid.contains(dx * i, dy * i, dz * i))
+        return false;
+
+      int cell = getNeighbor(dx * i, dy * i, dz * i);
+      if (TreeGrid.kind(cell) == TreeBlockInfo.Kind.LEAVES)
+        return TreeGrid.species(cell) == species;
+    }
+    return false;
+  }
+}
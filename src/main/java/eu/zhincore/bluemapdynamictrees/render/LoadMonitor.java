@@ -0,0 +1,299 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.Nullable;
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.BlueMapAPI;
+import de.bluecolored.bluemap.api.BlueMapMap;
+import de.bluecolored.bluemap.api.RenderManager;
+import de.bluecolored.bluemap.core.logger.Logger;
+import eu.zhincore.bluemapdynamictrees.config.AddonConfig;
+import eu.zhincore.bluemapdynamictrees.metrics.LatencyHistogram;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
+
+/**
+ * Watches BlueMap's render queue and the mean render time of Dynamic Trees blocks. While either is
+ * over its limit the renderers use the degraded profile, the regions rendered that way are
+ * remembered and rendered again once the queue has drained. They are kept in the data folder until
+ * then, so regions left after a restart or reload are rendered again too.
+ */
+public final class LoadMonitor {
+  public static final LoadMonitor INSTANCE = new LoadMonitor();
+
+  private static final int POLL_INTERVAL_SECONDS = 5;
+  private static final int MAGIC = 0x44545247;
+  private static final int VERSION = 1;
+
+  /** The regions rendered with less detail, by the id of their world. */
+  private final Map<String, Set<Long>> degradedRegions = new ConcurrentHashMap<>();
+  /** The regions of the queued re-renders, kept in the file until the queue is empty. */
+  private final Map<String, Set<Long>> scheduledRegions = new ConcurrentHashMap<>();
+  /** Whether the regions changed since they were last written. */
+  private volatile boolean regionsChanged;
+  private @Nullable Path regionsFile;
+  private volatile boolean degraded;
+  /** Counts the re-renders, recorders then add their region again. */
+  private volatile int rerenders;
+  private ScheduledExecutorService pollExecutor;
+
+  private long lastBlocks;
+  private long lastNanos;
+  /**
+   * Queued tasks that re-render degraded regions, they don't count as backlog. BlueMap's API only
+   * tells the size of its queue, not which tasks are still in it, so they are assumed to be queued
+   * until the queue is shorter than their count.
+   */
+  private int rerenderTasks;
+
+  private LoadMonitor() {
+  }
+
+  /** Whether blocks should be rendered with the degraded profile right now. */
+  public boolean isDegraded() {
+    return degraded;
+  }
+
+  /**
+   * A recorder for the regions of the world with the id. Each renderer needs its own, recorders are
+   * not thread-safe.
+   */
+  public Recorder recorder(String worldId) {
+    return new Recorder(degradedRegions.computeIfAbsent(worldId,
+        id -> ConcurrentHashMap.newKeySet()));
+  }
+
+  /**
+   * Checks the load until BlueMap disables the API. The regions left from before are rendered again
+   * once the queue is empty.
+   */
+  public synchronized void start(BlueMapAPI api) {
+    stop();
+    regionsFile = AddonConfig.get().getDegradedRegionsFile();
+    readRegions();
+    LatencyHistogram render = RenderMetrics.INSTANCE.render();
+    lastBlocks = render.getCount();
+    lastNanos = render.getTotalNanos();
+
+    pollExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "BlueMapDynamicTrees-LoadMonitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    pollExecutor.scheduleWithFixedDelay(() -> poll(api), POLL_INTERVAL_SECONDS,
+        POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public synchronized void stop() {
+    if (pollExecutor != null) {
+      pollExecutor.shutdownNow();
+      pollExecutor = null;
+      writeRegions();
+    }
+    degraded = false;
+  }
+
+  private void poll(BlueMapAPI api) {
+    try {
+      AddonConfig config = AddonConfig.get();
+      RenderManager renderManager = api.getRenderManager();
+      int queueSize = renderManager.renderQueueSize();
+      // An estimate, the re-render tasks may have finished while others were queued after them
+      rerenderTasks = Math.min(rerenderTasks, queueSize);
+      int backlog = queueSize - rerenderTasks;
+      long meanNanos = pollMeanNanos();
+
+      int queueLimit = config.getDegradeQueueSize();
+      long latencyLimit = config.getDegradeRenderMicros() * 1000L;
+      if (!degraded) {
+        if (queueLimit > 0 && backlog > queueLimit
+            || latencyLimit > 0 && meanNanos > latencyLimit) {
+          degraded = true;
+          Logger.global.logInfo("Dynamic Trees: " + backlog + " queued render tasks and "
+              + meanNanos / 1000 + " us per block, rendering trees with less detail");
+        }
+      } else if ((queueLimit <= 0 || backlog <= queueLimit / 2)
+          && (latencyLimit <= 0 || meanNanos <= latencyLimit / 2)) {
+        // Half the limits, so the detail does not flip back and forth around them
+        degraded = false;
+        Logger.global.logInfo(
+            "Dynamic Trees: render queue drained, rendering trees in full detail");
+      }
+
+      if (queueSize == 0 && !scheduledRegions.isEmpty()) {
+        // The re-renders are done
+        scheduledRegions.clear();
+        regionsChanged = true;
+      }
+      if (!degraded && queueSize == 0) {
+        rerenderTasks += rerenderDegradedRegions(api);
+      }
+      if (regionsChanged) {
+        writeRegions();
+      }
+    } catch (Exception e) {
+      Logger.global.logWarning("Failed to check the render load for Dynamic Trees: " + e);
+    }
+  }
+
+  /** The mean render time of the blocks rendered since the last poll. */
+  private long pollMeanNanos() {
+    LatencyHistogram render = RenderMetrics.INSTANCE.render();
+    long blocks = render.getCount();
+    long nanos = render.getTotalNanos();
+    long newBlocks = blocks - lastBlocks;
+    long newNanos = nanos - lastNanos;
+    lastBlocks = blocks;
+    lastNanos = nanos;
+
+    // Nothing rendered, or the metrics were reset in between
+    if (newBlocks <= 0 || newNanos < 0)
+      return 0;
+    return newNanos / newBlocks;
+  }
+
+  private int rerenderDegradedRegions(BlueMapAPI api) {
+    Map<String, List<BlueMapMap>> worldMaps = api.getMaps().stream()
+        .collect(Collectors.groupingBy(map -> map.getWorld().getId()));
+
+    int tasks = 0;
+    for (Map.Entry<String, Set<Long>> entry : degradedRegions.entrySet()) {
+      Set<Long> regions = entry.getValue();
+      List<BlueMapMap> maps = worldMaps.get(entry.getKey());
+      if (maps == null || regions.isEmpty())
+        continue;
+
+      rerenders++;
+      List<Long> keys = List.copyOf(regions);
+      regions.removeAll(keys);
+      scheduledRegions.computeIfAbsent(entry.getKey(), id -> ConcurrentHashMap.newKeySet())
+          .addAll(keys);
+      regionsChanged = true;
+      List<Vector2i> positions = keys.stream()
+          .map(key -> new Vector2i((int) (key >> 32), key.intValue()))
+          .toList();
+      // All regions of a map are rendered by a single queued task, every map of the world was
+      // rendered with less detail
+      for (BlueMapMap map : maps) {
+        if (api.getRenderManager().scheduleMapUpdateTask(map, positions, true)) {
+          tasks++;
+          Logger.global.logInfo("Dynamic Trees: re-rendering " + positions.size()
+              + " regions of " + map.getName() + " rendered with less detail");
+        } else {
+          regions.addAll(keys);
+        }
+      }
+    }
+    return tasks;
+  }
+
+  /** Adds the regions written by the last run to the degraded ones. */
+  private synchronized void readRegions() {
+    if (regionsFile == null)
+      return;
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(regionsFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return;
+
+      int worldCount = in.readInt();
+      for (int i = 0; i < worldCount; i++) {
+        Set<Long> regions = degradedRegions.computeIfAbsent(in.readUTF(),
+            id -> ConcurrentHashMap.newKeySet());
+        int regionCount = in.readInt();
+        for (int j = 0; j < regionCount; j++) {
+          regions.add(in.readLong());
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing left to render again
+    } catch (IOException | RuntimeException e) {
+      Logger.global.logWarning("Failed to read the Dynamic Trees regions to render again: " + e);
+    }
+  }
+
+  /** Writes the degraded regions and those of queued re-renders. */
+  private synchronized void writeRegions() {
+    regionsChanged = false;
+    if (regionsFile == null)
+      return;
+
+    Map<String, Set<Long>> regions = new HashMap<>();
+    degradedRegions.forEach((id, keys) -> regions.computeIfAbsent(id, k -> new HashSet<>())
+        .addAll(keys));
+    scheduledRegions.forEach((id, keys) -> regions.computeIfAbsent(id, k -> new HashSet<>())
+        .addAll(keys));
+    regions.values().removeIf(Set::isEmpty);
+
+    try {
+      if (regions.isEmpty()) {
+        Files.deleteIfExists(regionsFile);
+        return;
+      }
+
+      Files.createDirectories(regionsFile.toAbsolutePath().getParent());
+      Path tempFile = regionsFile.resolveSibling(regionsFile.getFileName() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(regions.size());
+        for (Map.Entry<String, Set<Long>> entry : regions.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeInt(entry.getValue().size());
+          for (long key : entry.getValue()) {
+            out.writeLong(key);
+          }
+        }
+      }
+      Files.move(tempFile, regionsFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Logger.global.logWarning("Failed to write the Dynamic Trees regions to render again: " + e);
+    }
+  }
+
+  /** Remembers the regions of degraded blocks, skipping the set while blocks stay in a region. */
+  public static final class Recorder {
+    private static final int REGION_SHIFT = 9;
+
+    private final Set<Long> regions;
+    private long lastKey;
+    private int lastRerenders = -1;
+
+    private Recorder(Set<Long> regions) {
+      this.regions = regions;
+    }
+
+    public void record(int x, int z) {
+      long key = (long) (x >> REGION_SHIFT) << 32 | (z >> REGION_SHIFT) & 0xFFFFFFFFL;
+      int rerenders = INSTANCE.rerenders;
+      if (key == lastKey && rerenders == lastRerenders)
+        return;
+
+      if (regions.add(key)) {
+        INSTANCE.regionsChanged = true;
+      }
+      lastKey = key;
+      lastRerenders = rerenders;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Small direct-mapped cache owned by a single renderer instance, in front of the shared
+ * {@link GeometryCache}. Hits don't touch shared state, lookups in the shared cache reuse one key.
+ */
+final class LocalGeometryCache {
+  private static final int SLOT_BITS = 8;
+
+  private final GeometryCache shared;
+  private final long[] keys = new long[1 << SLOT_BITS];
+  private final GeometryTemplate[] templates = new GeometryTemplate[1 << SLOT_BITS];
+  private final GeometryCache.TemplateKey lookupKey = new GeometryCache.TemplateKey(0);
+
+  LocalGeometryCache(GeometryCache shared) {
+    this.shared = shared;
+    Arrays.fill(keys, -1);
+  }
+
+  public @Nullable GeometryTemplate get(long key) {
+    int slot = slot(key);
+    if (keys[slot] == key)
+      return templates[slot];
+
+    lookupKey.value = key;
+    GeometryTemplate template = shared.get(lookupKey);
+    if (template != null) {
+      keys[slot] = key;
+      templates[slot] = template;
+    }
+    return template;
+  }
+
+  public GeometryTemplate put(long key, GeometryTemplate template) {
+    template = shared.put(key, template);
+
+    int slot = slot(key);
+    keys[slot] = key;
+    templates[slot] = template;
+    return template;
+  }
+
+  private static int slot(long key) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - SLOT_BITS));
+  }
+}
@@ -4,66 +4,151 @@ import de.bluecolored.bluemap.core.map.TextureGallery;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
 import de.bluecolored.bluemap.core.map.hires.TileModelView;
 import de.bluecolored.bluemap.core.map.hires.block.BlockRendererType;
-import de.bluecolored.bluemap.core.resources.ResourcePath;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePack;
-import de.bluecolored.bluemap.core.resources.pack.resourcepack.blockstate.Variant;
-import de.bluecolored.bluemap.core.resources.pack.resourcepack.texture.Texture;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.util.Key;
 import de.bluecolored.bluemap.core.util.math.Axis;
 import de.bluecolored.bluemap.core.util.math.Color;
-import de.bluecolored.bluemap.core.world.BlockState;
-import de.bluecolored.bluemap.core.world.block.BlockNeighborhood;
+import java.util.concurrent.ConcurrentHashMap;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
 import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockInfo;
 
 public class SurfaceRootModelRenderer extends AbstractDynamicTreeRenderer {
   public static final BlockRendererType TYPE = new BlockRendererType.Impl(
       new Key("bluemapmodeladdon", "dt_surface_root"), SurfaceRootModelRenderer::new);
   private static final Direction[] HORIZONTALS = { Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST };
+  private static final ConcurrentHashMap<RenderProfile, GeometryCache> GEOMETRY_CACHES =
+      new ConcurrentHashMap<>();
+
+  private LocalGeometryCache geometryCache = createGeometryCache(fullProfile);
+  private LocalGeometryCache degradedGeometryCache = degradedProfile == fullProfile
+      ? geometryCache
+      : createGeometryCache(degradedProfile);
+  private final ConnectionInfo connectionInfo = new ConnectionInfo();
 
   public SurfaceRootModelRenderer(ResourcePack resourcePack, TextureGallery textureGallery,
       RenderSettings renderSettings) {
     super(resourcePack, textureGallery, renderSettings);
   }
 
+  public SurfaceRootModelRenderer(DynamicTreesPack dynamicTreesPack, TextureGallery textureGallery,
+      RenderSettings renderSettings) {
+    super(dynamicTreesPack, textureGallery, renderSettings);
+  }
+
+  private static LocalGeometryCache createGeometryCache(RenderProfile profile) {
+    return new LocalGeometryCache(
+        GEOMETRY_CACHES.computeIfAbsent(profile, p -> new GeometryCache(GEOMETRY_CACHE_SIZE)));
+  }
+
   @Override
-  public void render(BlockNeighborhood block, Variant variant, TileModelView blockModel,
-      Color color) {
+  protected void profileChanged() {
+    geometryCache = createGeometryCache(fullProfile);
+    degradedGeometryCache = degradedProfile == fullProfile
+        ? geometryCache
+        : createGeometryCache(degradedProfile);
+  }
+
+  @Override
+  protected LoaderType getLoaderType() {
+    return LoaderType.ROOT;
+  }
+
+  @Override
+  public void render(TreeNeighborhood block, BranchModelExtension model,
+      TileModelView blockModel, Color color) {
     this.block = block;
     this.blockModel = blockModel;
     this.blockColor = color;
-    this.blockColorOpacity = 0f;
 
-    BranchModelExtension model = dynamicTreesResourcePack.getModels().get(variant.getModel());
+    resolveTextures(model);
+    if (barkTextureId < 0) {
+      METRICS.skipped(RenderMetrics.Skip.MISSING_TEXTURE);
+      return;
+    }
 
-    if (model == null)
+    // The minimal detail has no roots
+    if (profile.detail() == RenderProfile.Detail.MINIMAL)
       return;
 
-    ResourcePath<Texture> barkPath = model.getBarkTexture().getTexturePath();
+    TreeBlockInfo info = getInfo(block.getBlockState());
+    int radius = info.radius();
+    if (radius < 1 || radius > 8) {
+      METRICS.skipped(RenderMetrics.Skip.NO_RADIUS);
+      return;
+    }
 
-    if (barkPath == null)
+    if (!computeLight())
       return;
 
-    int barkTextureId = textureGallery.get(barkPath);
+    ConnectionInfo connInfo = getRootConnections(info);
 
-    int radius = getRadius(block.getBlockState());
-    if (radius < 1 || radius > 8)
-      return;
+    boolean rendered;
+    if (profile.reference()) {
+      beginReference();
+      bake(profile.detail(), radius, connInfo);
+      rendered = endReference();
+    } else {
+      long key = appendKey(0, radius);
+      for (int i = 0; i < HORIZONTALS.length; i++) {
+        key = appendKey(key, connInfo.horizontalRoots[i]);
+        key = appendKey(key, connInfo.verticalBranches[i]);
+      }
 
-    ConnectionInfo connInfo = getConnections();
+      LocalGeometryCache cache = profile == fullProfile ? geometryCache : degradedGeometryCache;
+      GeometryTemplate template = key < 0 ? null : cache.get(key);
+      if (template == null) {
+        template = bakeGeometry(radius, connInfo);
+        if (key >= 0) {
+          template = cache.put(key, template);
+        }
+      }
+
+      renderGeometry(template, barkTextureId, barkTextureId);
+      rendered = template.quadCount > 0;
+    }
+
+    if (rendered) {
+      setMapColor(barkColor, radius, false);
+    }
+  }
+
+  private GeometryTemplate bakeGeometry(int radius, ConnectionInfo connInfo) {
+    RenderProfile.Detail detail = profile.detail();
+    while (true) {
+      geometry.reset();
+      bake(detail, radius, connInfo);
 
-    int modelStart = blockModel.getStart();
+      GeometryTemplate template = geometry.build();
+      if (fitsBudget(template, detail))
+        return template;
+      detail = detail.lower();
+    }
+  }
 
+  private void bake(RenderProfile.Detail detail, int radius, ConnectionInfo connInfo) {
+    if (detail == RenderProfile.Detail.FULL) {
+      bakeFull(radius, connInfo);
+    } else if (detail == RenderProfile.Detail.REDUCED) {
+      bakeReduced(radius, connInfo);
+    }
+  }
+
+  private void bakeFull(int radius, ConnectionInfo connInfo) {
     Direction sourceDir = getHorizontalSourceDir(radius, connInfo.horizontalRoots);
     int coreAxis = sourceDir != null && sourceDir.getAxis() == Axis.X ? 1 : 0;
 
-    renderCore(radius, coreAxis, barkTextureId);
+    renderCore(radius, coreAxis, getCoveredFaces(radius, connInfo.horizontalRoots, 1));
 
     if (radius < 8) {
       for (int i = 0; i < HORIZONTALS.length; i++) {
         int connRadius = connInfo.horizontalRoots[i];
         if (connRadius > 0) {
-          renderSleeve(connRadius, HORIZONTALS[i], barkTextureId);
+          renderSleeve(connRadius, HORIZONTALS[i]);
         }
       }
     }
@@ -72,35 +157,115 @@ public class SurfaceRootModelRenderer extends AbstractDynamicTreeRenderer {
     for (int i = 0; i < HORIZONTALS.length; i++) {
       int connRadius = connInfo.verticalBranches[i];
       if (connRadius > 0) {
-        renderVert(connRadius, HORIZONTALS[i], barkTextureId);
+        renderVert(connRadius, HORIZONTALS[i]);
+      }
+    }
+  }
+
+  private void bakeReduced(int radius, ConnectionInfo connInfo) {
+    int[] horizontalRoots = connInfo.horizontalRoots;
+    Direction sourceDir = getHorizontalSourceDir(radius, horizontalRoots);
+    int coreAxis = sourceDir != null && sourceDir.getAxis() == Axis.X ? 1 : 0;
+
+    int straightAxis = getStraightAxis(radius, horizontalRoots);
+    if (straightAxis >= 0) {
+      renderRootBox(radius, straightAxis, horizontalRoots);
+      return;
+    }
+
+    int minSleeve = profile.sleeveMinRadius();
+    renderCore(radius, coreAxis, getCoveredFaces(radius, horizontalRoots, minSleeve));
+
+    if (radius < 8) {
+      for (int i = 0; i < HORIZONTALS.length; i++) {
+        int connRadius = horizontalRoots[i];
+        if (connRadius > 0 && connRadius >= minSleeve) {
+          renderSleeve(connRadius, HORIZONTALS[i]);
+        }
       }
     }
+  }
+
+  /**
+   * Faces of the core hidden by a sleeve at least {@code minSleeve} thick, none for the reference.
+   */
+  private int getCoveredFaces(int radius, int[] horizontalRoots, int minSleeve) {
+    int coveredFaces = 0;
+    if (radius < 8 && !profile.reference()) {
+      for (int i = 0; i < HORIZONTALS.length; i++) {
+        int connRadius = horizontalRoots[i];
+        // Fully covered by a sleeve of the same radius, thinner sleeves leave a U-shaped remainder
+        if (connRadius >= radius && connRadius >= minSleeve) {
+          coveredFaces |= 1 << HORIZONTALS[i].ordinal();
+        }
+      }
+    }
+    return coveredFaces;
+  }
+
+  /**
+   * The horizontal axis all roots lie on if each of them is as thick as the core, 1 for X and 0
+   * for Z. -1 otherwise.
+   */
+  private int getStraightAxis(int radius, int[] horizontalRoots) {
+    if (radius >= 8)
+      return -1;
+
+    int axis = -1;
+    for (int i = 0; i < HORIZONTALS.length; i++) {
+      int connRadius = horizontalRoots[i];
+      if (connRadius == 0)
+        continue;
+
+      int dirAxis = HORIZONTALS[i].getAxis() == Axis.X ? 1 : 0;
+      if (connRadius < radius || (axis >= 0 && axis != dirAxis))
+        return -1;
+      axis = dirAxis;
+    }
+    return axis;
+  }
 
-    if (color.a > 0) {
-      color.flatten().straight();
-      color.a = blockColorOpacity;
+  /** Renders the core and its straight sleeves as a single box. */
+  private void renderRootBox(int radius, int axis, int[] horizontalRoots) {
+    float radialHeight = radius * 2;
+    float minX = 8 - radius, minZ = 8 - radius;
+    float maxX = 8 + radius, maxZ = 8 + radius;
+
+    if (axis == 1) {
+      minX = getHorizontalConnection(horizontalRoots, Direction.WEST) > 0 ? 0 : minX;
+      maxX = getHorizontalConnection(horizontalRoots, Direction.EAST) > 0 ? 16 : maxX;
+    } else {
+      minZ = getHorizontalConnection(horizontalRoots, Direction.NORTH) > 0 ? 0 : minZ;
+      maxZ = getHorizontalConnection(horizontalRoots, Direction.SOUTH) > 0 ? 16 : maxZ;
     }
 
-    blockModel.initialize(modelStart);
-    blockModel.transform(createScaleMatrix(BLOCK_SCALE));
+    setCorners(minX, 0, minZ, maxX, radialHeight, maxZ);
+
+    Axis axisEnum = axis == 0 ? Axis.Z : Axis.X;
+    for (Direction face : DIRECTIONS) {
+      renderBoxFace(face, GeometryTemplate.BARK, getFaceAngle(axisEnum, face));
+    }
   }
 
-  private void renderCore(int radius, int axis, int barkTextureId) {
+  private void renderCore(int radius, int axis, int coveredFaces) {
     float radialHeight = radius * 2;
     float min = 8 - radius;
     float max = 8 + radius;
 
     setCorners(min, 0, min, max, radialHeight, max);
 
-    for (Direction face : Direction.values()) {
+    for (Direction face : DIRECTIONS) {
+      if ((coveredFaces & (1 << face.ordinal())) != 0)
+        continue;
+
       Axis axisEnum = axis == 0 ? Axis.Z : Axis.X;
       int angle = getFaceAngle(axisEnum, face);
 
-      renderBoxFace(face, barkTextureId, angle, radius, 0);
+      renderBoxFace(face, GeometryTemplate.BARK, angle);
     }
   }
 
-  private void renderSleeve(int radius, Direction dir, int barkTextureId) {
+  private void renderSleeve(int radius, Direction dir) {
     float radialHeight = radius * 2;
     int dradius = radius * 2;
     int halfSize = (16 - dradius) / 2;
@@ -117,17 +282,17 @@ public class SurfaceRootModelRenderer extends AbstractDynamicTreeRenderer {
 
     setCorners(minX, 0, minZ, maxX, radialHeight, maxZ);
 
-    for (Direction face : Direction.values()) {
+    for (Direction face : DIRECTIONS) {
       if (face == getOpposite(dir))
         continue;
 
       int angle = getFaceAngle(dir.getAxis(), face);
 
-      renderBoxFace(face, barkTextureId, angle, radius, 0);
+      renderBoxFace(face, GeometryTemplate.BARK, angle);
     }
   }
 
-  private void renderVert(int radius, Direction dir, int barkTextureId) {
+  private void renderVert(int radius, Direction dir) {
     float radialHeight = radius * 2;
 
     // Render two segments: one in current block, one extending up
@@ -149,40 +314,69 @@ public class SurfaceRootModelRenderer extends AbstractDynamicTreeRenderer {
 
       setCorners(minX, minY, minZ, maxX, maxY, maxZ);
 
-      for (Direction face : Direction.values()) {
-        renderBoxFace(face, barkTextureId, getFaceAngle(Axis.Y, face), radius, 0);
+      for (Direction face : DIRECTIONS) {
+        renderBoxFace(face, GeometryTemplate.BARK, getFaceAngle(Axis.Y, face));
       }
     }
   }
 
   private static class ConnectionInfo {
-    int[] horizontalRoots = new int[4];
-    int[] verticalBranches = new int[4];
+    final int[] horizontalRoots = new int[4];
+    final int[] verticalBranches = new int[4];
   }
 
-  private ConnectionInfo getConnections() {
-    ConnectionInfo info = new ConnectionInfo();
-    int ownRadius = getRadius(block.getBlockState());
+  private ConnectionInfo getRootConnections(TreeBlockInfo own) {
+    ConnectionInfo info = connectionInfo;
+    int ownRadius = own.radius();
+    occludedFaces = 0;
 
     for (int i = 0; i < HORIZONTALS.length; i++) {
-      Direction dir = HORIZONTALS[i];
+      info.horizontalRoots[i] = 0;
+      info.verticalBranches[i] = 0;
+    }
+
+    grid = TreeGrid.moveTo(block, blockIndex);
+    for (Direction dir : DIRECTIONS) {
       var vec = dir.toVector();
-      var neighbor = block.getNeighborBlock(vec.getX(), vec.getY(), vec.getZ());
-
-      if (neighbor != null) {
-        BlockState neighborState = neighbor.getBlockState();
-        if (isSameSpecies(block.getBlockState(), neighborState)) {
-          int neighborRadius = getRadius(neighborState);
-          if (neighborRadius > 0) {
-            info.horizontalRoots[i] = Math.min(neighborRadius, ownRadius);
+      int neighbor = getNeighbor(vec.getX(), vec.getY(), vec.getZ());
+      int horizontal = getHorizontalIndex(dir);
+
+      if (TreeGrid.species(neighbor) == own.species()) {
+        int neighborRadius = TreeGrid.radius(neighbor);
+        if (neighborRadius > 0 && horizontal >= 0) {
+          info.horizontalRoots[horizontal] = Math.min(neighborRadius, ownRadius);
+          if (isFlushWith(ownRadius, neighborRadius)) {
+            occludedFaces |= 1 << dir.ordinal();
           }
         }
+      } else if (isOccluding(neighbor, vec.getX(), vec.getY(), vec.getZ())) {
+        occludedFaces |= 1 << dir.ordinal();
       }
     }
 
     return info;
   }
 
+  @Override
+  protected boolean isFlushWith(int radius, int neighborRadius) {
+    // The minimal detail has no roots to cover anything
+    return lowestDetail != RenderProfile.Detail.MINIMAL
+        && super.isFlushWith(radius, neighborRadius);
+  }
+
+  private int getHorizontalIndex(Direction dir) {
+    for (int i = 0; i < HORIZONTALS.length; i++) {
+      if (HORIZONTALS[i] == dir)
+        return i;
+    }
+    return -1;
+  }
+
+  private int getHorizontalConnection(int[] connections, Direction dir) {
+    int horizontal = getHorizontalIndex(dir);
+    return horizontal >= 0 ? connections[horizontal] : 0;
+  }
+
   private Direction getHorizontalSourceDir(int coreRadius, int[] connections) {
     int largestConnection = 0;
     Direction sourceDir = null;
@@ -0,0 +1,130 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import java.util.Arrays;
+import de.bluecolored.bluemap.core.world.BlockState;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockIndex;
+import eu.zhincore.bluemapdynamictrees.resources.TreeBlockInfo;
+
+/**
+ * Packed {@link TreeBlockInfo}s around the chunk column the renderers of a thread are in, including
+ * a one block border. Cells are read from the world the first time they are asked for and stay
+ * valid until the renderers move to another chunk. BlueMap renders a tile column by column, each
+ * from the top down, so a cell is looked up once for all blocks and renderers of the chunk instead
+ * of once per neighbor.
+ *
+ * <p>
+ * Cells are packed as {@code species << 8 | kind << 5 | radius}. Columns are stored along the y
+ * axis so vertical neighbors are next to each other, the y axis wraps around every
+ * {@value #HEIGHT} blocks and each cell remembers the y it was read for.
+ */
+final class TreeGrid {
+  private static final int SECTION_SIZE = 16;
+  private static final int SIZE = SECTION_SIZE + 2;
+  private static final int HEIGHT = 64;
+
+  private static final int RADIUS_MASK = 0x1F;
+  private static final int KIND_SHIFT = 5;
+  private static final int KIND_MASK = 0x7;
+  private static final int SPECIES_SHIFT = 8;
+
+  private static final TreeBlockInfo.Kind[] KINDS = TreeBlockInfo.Kind.values();
+  private static final ThreadLocal<TreeGrid> GRIDS = ThreadLocal.withInitial(TreeGrid::new);
+
+  private final int[] cells = new int[SIZE * SIZE * HEIGHT];
+  /** The generation and y each cell was read for, {@code generation << 32 | y}. */
+  private final long[] keys = new long[SIZE * SIZE * HEIGHT];
+  private int generation = 1;
+
+  private TreeNeighborhood block;
+  private TreeBlockIndex blockIndex;
+  private Object chunk;
+  private int minX, minZ, minY;
+  private int centerX, centerY, centerZ;
+  private int column;
+
+  private TreeGrid() {
+  }
+
+  /**
+   * The grid of the current thread prepared for the block. Its cells are dropped first if the block
+   * lies in another chunk or is rendered with another block index.
+   */
+  public static TreeGrid moveTo(TreeNeighborhood block, TreeBlockIndex blockIndex) {
+    TreeGrid grid = GRIDS.get();
+    grid.move(block, blockIndex);
+    return grid;
+  }
+
+  private void move(TreeNeighborhood block, TreeBlockIndex blockIndex) {
+    int x = block.getX();
+    int y = block.getY();
+    int z = block.getZ();
+    int chunkX = (x & -SECTION_SIZE) - 1;
+    int chunkZ = (z & -SECTION_SIZE) - 1;
+
+    Object blockChunk = block.getChunk();
+    if (blockChunk != chunk || blockIndex != this.blockIndex || chunkX != minX
+        || chunkZ != minZ) {
+      chunk = blockChunk;
+      this.blockIndex = blockIndex;
+      minX = chunkX;
+      minZ = chunkZ;
+      if (++generation == 0) {
+        Arrays.fill(keys, 0);
+        generation = 1;
+      }
+    }
+
+    this.block = block;
+    minY = (y & -SECTION_SIZE) - 1;
+    centerX = x - minX;
+    centerY = y;
+    centerZ = z - minZ;
+    column = (centerX * SIZE + centerZ) * HEIGHT;
+  }
+
+  /**
+   * Whether the offset from the block the grid was last moved to lies inside the chunk section of
+   * the block or its one block border.
+   */
+  public boolean contains(int dx, int dy, int dz) {
+    return isInside(centerX + dx) && isInside(centerY + dy - minY) && isInside(centerZ + dz);
+  }
+
+  /**
+   * The packed cell at the offset from the block the grid was last moved to, the offset has to lie
+   * in the chunk column or its one block border.
+   */
+  public int get(int dx, int dy, int dz) {
+    int y = centerY + dy;
+    int i = column + (dx * SIZE + dz) * HEIGHT + (y & HEIGHT - 1);
+    long key = (long) generation << 32 | y & 0xFFFFFFFFL;
+    if (keys[i] != key) {
+      BlockState state = block.getBlockStateAt(minX + centerX + dx, y, minZ + centerZ + dz);
+      cells[i] = pack(blockIndex.get(state));
+      keys[i] = key;
+    }
+    return cells[i];
+  }
+
+  public static TreeBlockInfo.Kind kind(int cell) {
+    return KINDS[cell >> KIND_SHIFT & KIND_MASK];
+  }
+
+  public static int radius(int cell) {
+    return cell & RADIUS_MASK;
+  }
+
+  public static int species(int cell) {
+    return cell >>> SPECIES_SHIFT;
+  }
+
+  static int pack(TreeBlockInfo info) {
+    return info.species() << SPECIES_SHIFT | info.kind().ordinal() << KIND_SHIFT
+        | Math.min(info.radius(), RADIUS_MASK);
+  }
+
+  private static boolean isInside(int coordinate) {
+    return coordinate >= 0 && coordinate < SIZE;
+  }
+}
@@ -0,0 +1,42 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+
+/**
+ * The parts of a block's surroundings the Dynamic Trees renderers read. Offsets are relative to
+ * the rendered block, light is packed as {@code skyLight << 4 | blockLight}.
+ */
+public interface TreeNeighborhood {
+
+  int getX();
+
+  int getY();
+
+  int getZ();
+
+  /**
+   * The chunk the block lies in. It is only compared by identity, a different chunk means the
+   * surrounding blocks may have changed.
+   */
+  Object getChunk();
+
+  BlockState getBlockState();
+
+  /** The block state at an absolute position, read directly from the world's chunks. */
+  BlockState getBlockStateAt(int x, int y, int z);
+
+  int getPackedLight(int dx, int dy, int dz);
+
+  /** Whether the block at the offset is a full, opaque block that hides faces touching it. */
+  boolean isCulling(int dx, int dy, int dz);
+
+  boolean isRemoveIfCave();
+
+  static int skyLight(int packedLight) {
+    return packedLight >> 4;
+  }
+
+  static int blockLight(int packedLight) {
+    return packedLight & 0xF;
+  }
+}
@@ -0,0 +1,121 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import de.bluecolored.bluemap.core.util.Direction;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Writes the corners and UVs of box faces with the incubating Vector API, the same values the face
+ * switch of {@link GeometryBuilder#addBoxFace} writes. The six box values are loaded into one
+ * vector and shuffled into place per face and UV rotation. Only loaded when the JVM was started
+ * with {@code --add-modules jdk.incubator.vector}.
+ */
+final class VectorBoxFaces {
+  private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_256;
+  private static final VectorMask<Float> BOX = VectorMask.fromLong(SPECIES, 0b111111);
+  private static final VectorMask<Float> MAXIMUM = VectorMask.fromLong(SPECIES, 0b111000);
+  /** Swaps the minimum and the maximum corner. */
+  private static final VectorShuffle<Float> SWAP =
+      VectorShuffle.fromValues(SPECIES, 3, 4, 5, 0, 1, 2, 6, 7);
+
+  /** The box value the face lies on, by face. */
+  static final int[] SIDE = new int[6];
+  /** The box value of the minimum U and V, the maximum follows 3 values later, by face. */
+  static final int[] U_AXIS = new int[6];
+  static final int[] V_AXIS = new int[6];
+
+  /** The first 8 and the last 8 of the 12 corner values, by face. */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final VectorShuffle<Float>[] CORNERS_START = new VectorShuffle[6];
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final VectorShuffle<Float>[] CORNERS_END = new VectorShuffle[6];
+  /** The UVs from the sorted box, by face and UV rotation. */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final VectorShuffle<Float>[] UVS = new VectorShuffle[6 * 4];
+
+  static {
+    for (Direction face : Direction.values()) {
+      int f = face.ordinal();
+      int[] corners;
+      switch (face) {
+        case DOWN:
+          corners = new int[] { 0, 1, 2, 3, 1, 2, 3, 1, 5, 0, 1, 5 };
+          SIDE[f] = 1;
+          U_AXIS[f] = 0;
+          V_AXIS[f] = 2;
+          break;
+        case UP:
+          corners = new int[] { 0, 4, 5, 3, 4, 5, 3, 4, 2, 0, 4, 2 };
+          SIDE[f] = 4;
+          U_AXIS[f] = 0;
+          V_AXIS[f] = 2;
+          break;
+        case NORTH:
+          corners = new int[] { 3, 1, 2, 0, 1, 2, 0, 4, 2, 3, 4, 2 };
+          SIDE[f] = 2;
+          U_AXIS[f] = 0;
+          V_AXIS[f] = 1;
+          break;
+        case SOUTH:
+          corners = new int[] { 0, 1, 5, 3, 1, 5, 3, 4, 5, 0, 4, 5 };
+          SIDE[f] = 5;
+          U_AXIS[f] = 0;
+          V_AXIS[f] = 1;
+          break;
+        case WEST:
+          corners = new int[] { 0, 1, 2, 0, 1, 5, 0, 4, 5, 0, 4, 2 };
+          SIDE[f] = 0;
+          U_AXIS[f] = 2;
+          V_AXIS[f] = 1;
+          break;
+        default:
+          corners = new int[] { 3, 1, 5, 3, 1, 2, 3, 4, 2, 3, 4, 5 };
+          SIDE[f] = 3;
+          U_AXIS[f] = 2;
+          V_AXIS[f] = 1;
+          break;
+      }
+      CORNERS_START[f] = VectorShuffle.fromArray(SPECIES, corners, 0);
+      CORNERS_END[f] = VectorShuffle.fromArray(SPECIES, corners, 4);
+
+      int minU = U_AXIS[f], maxU = minU + 3;
+      int minV = V_AXIS[f], maxV = minV + 3;
+      UVS[f * 4] = VectorShuffle.fromValues(SPECIES,
+          minU, maxV, maxU, maxV, maxU, minV, minU, minV);
+      UVS[f * 4 + 1] = VectorShuffle.fromValues(SPECIES,
+          minV, minU, minV, maxU, maxV, maxU, maxV, minU);
+      UVS[f * 4 + 2] = VectorShuffle.fromValues(SPECIES,
+          maxU, minV, minU, minV, minU, maxV, maxU, maxV);
+      UVS[f * 4 + 3] = VectorShuffle.fromValues(SPECIES,
+          maxV, maxU, maxV, minU, minV, minU, minV, maxU);
+    }
+  }
+
+  private VectorBoxFaces() {
+  }
+
+  /** Whether the CPU has vectors of 8 floats, narrower ones are emulated and slower than scalar. */
+  static boolean isSupported() {
+    return FloatVector.SPECIES_PREFERRED.length() >= SPECIES.length();
+  }
+
+  /**
+   * Writes the 12 corner values of the face at {@code p} and its 8 UVs at {@code u}, see
+   * {@link GeometryBuilder#addBoxFace}.
+   */
+  static void write(Direction face, float[] box, int uvRotation, float[] positions, int p,
+      float[] uvs, int u) {
+    int f = face.ordinal();
+    FloatVector values = FloatVector.fromArray(SPECIES, box, 0, BOX);
+    values.rearrange(CORNERS_START[f]).intoArray(positions, p);
+    // Overlaps the first store by 4 values, all of a quad's 12 are within the array
+    values.rearrange(CORNERS_END[f]).intoArray(positions, p + 4);
+
+    FloatVector swapped = values.rearrange(SWAP);
+    FloatVector sorted = values.min(swapped).blend(values.max(swapped), MAXIMUM)
+        .mul(AbstractDynamicTreeRenderer.BLOCK_SCALE);
+    sorted.rearrange(UVS[f * 4 + ((uvRotation / 90) & 3)]).intoArray(uvs, u);
+  }
+}
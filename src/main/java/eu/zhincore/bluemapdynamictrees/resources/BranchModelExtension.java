@@ -1,43 +1,40 @@
 package eu.zhincore.bluemapdynamictrees.resources;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.io.IOException;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import org.jetbrains.annotations.Nullable;
 
+import com.google.gson.stream.JsonReader;
 import de.bluecolored.bluemap.core.resources.ResourcePath;
-import de.bluecolored.bluemap.core.resources.pack.resourcepack.model.TextureVariable;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.texture.Texture;
-import lombok.Getter;
-import lombok.experimental.Accessors;
 
-@Accessors(fluent = true)
-@Getter
-public class BranchModelExtension {
-  private static final String BARK = "bark";
-  private static final String RINGS = "rings";
-
-  private LoaderType loader;
-  private Map<String, TextureVariable> textures;
-
-  private Map<String, TextureVariable> getTextures() {
-    if (textures == null) {
-      textures = new HashMap<>();
-    }
-    return textures;
-  }
-
-  public @Nullable TextureVariable getBarkTexture() {
-    return getTextures().get(BARK);
+/**
+ * A block model with a Dynamic Trees loader, only the textures the renderers draw with are kept.
+ * Models of leaves have no rings, their bark texture is the leaves texture.
+ */
+public record BranchModelExtension(LoaderType loader, @Nullable ResourcePath<Texture> barkTexture,
+    @Nullable ResourcePath<Texture> ringsTexture) {
+  /** Whether all textures the model's loader draws with are set. */
+  public boolean hasTextures() {
+    return barkTexture != null && (loader != LoaderType.BRANCH || ringsTexture != null);
   }
 
-  public @Nullable TextureVariable getRingsTexture() {
-    return getTextures().get(RINGS);
+  public Stream<ResourcePath<Texture>> getUsedTextures() {
+    return Stream.concat(Stream.ofNullable(barkTexture), Stream.ofNullable(ringsTexture));
   }
 
-  public Stream<ResourcePath<Texture>> getUsedTextures() {
-    return getTextures().values().stream().map(TextureVariable::getTexturePath).filter(Objects::nonNull);
+  /**
+   * Reads a block model without a parent, returns {@code null} for models without a Dynamic Trees
+   * loader. Models with parents are read as {@link ModelSource}s and resolved by the
+   * {@link DynamicTreesPack}.
+   *
+   * @param texturePaths creates the path of a texture, allows sharing paths between models
+   */
+  public static @Nullable BranchModelExtension read(JsonReader reader,
+      Function<String, ResourcePath<Texture>> texturePaths) throws IOException {
+    ModelSource source = ModelSource.read(reader, true);
+    return source == null ? null : source.toModel(texturePaths);
   }
 }
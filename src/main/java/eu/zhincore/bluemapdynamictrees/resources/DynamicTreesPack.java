@@ -1,25 +1,88 @@
 package eu.zhincore.bluemapdynamictrees.resources;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.Nullable;
+import com.google.gson.stream.JsonReader;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.resources.ResourcePath;
-import de.bluecolored.bluemap.core.resources.adapter.ResourcesGson;
 import de.bluecolored.bluemap.core.resources.pack.ResourcePool;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.resources.pack.resourcepack.ResourcePackExtension;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.model.Model;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.model.TextureVariable;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.texture.Texture;
 import de.bluecolored.bluemap.core.util.Key;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.config.AddonConfig;
+import eu.zhincore.bluemapdynamictrees.metrics.RenderMetrics;
 import lombok.Getter;
 
 public class DynamicTreesPack implements ResourcePackExtension {
+  private static final Color TRANSPARENT = new Color();
+  private static final int MAX_PARENT_DEPTH = 32;
+
   private ResourcePack blueMapResourcePack;
 
   @Getter
   private final ResourcePool<BranchModelExtension> models;
 
+  @Getter
+  private final TreeBlockIndex blockIndex = new TreeBlockIndex();
+
+  /** Shares the path objects of textures used by many models, only needed while loading. */
+  private final ConcurrentHashMap<String, ResourcePath<Texture>> texturePaths =
+      new ConcurrentHashMap<>();
+
+  /**
+   * The models read from the roots as written in their files, by key. Every model that could be a
+   * Dynamic Trees model or one of its parents is kept. Only needed while loading.
+   */
+  private final Map<Key, ModelSource> sources = new HashMap<>();
+
+  /**
+   * The parents of the models the cache pruned or that were read without their textures, by key.
+   * Only needed while loading.
+   */
+  private final Map<Key, Optional<Key>> prunedParents = new HashMap<>();
+
+  /**
+   * The keys of every model file in the roots loaded so far, whatever the file holds. Like in
+   * BlueMap's own model pool the first root having a model wins, so any model hides the models with
+   * the same key in later roots. Read by the threads parsing a root, only needed while loading.
+   */
+  private final Set<Key> loadedKeys = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Whether models without a loader are read with their textures. Only the few such models Dynamic
+   * Trees models inherit from need them, so they are first read without, and all models are read
+   * again with them if one turns out to be needed.
+   */
+  private boolean plainTextures;
+
+  /** The cache of the current load, dropped once it is written after baking. */
+  private ModelCache cache = ModelCache.read(null);
+
+  /** Straight average colors of the textures used by the bound models, filled when baking. */
+  private Map<Key, Color> averageColors = Map.of();
+
+  /** The models of the bound leaves, by the key of their plain block model. Filled when baking. */
+  private Map<Key, BranchModelExtension> leavesModels = Map.of();
+
   DynamicTreesPack(ResourcePack pack) {
     this.blueMapResourcePack = pack;
 
@@ -28,23 +91,277 @@ public class DynamicTreesPack implements ResourcePackExtension {
 
   @Override
   public void loadResources(Iterable<Path> roots) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    try {
+      loadRoots(roots, ModelCache.read(AddonConfig.get().getCacheFile()), false);
+      if (!resolveModels()) {
+        Logger.global.logDebug("Dynamic Trees models inherit from models pruned from the cache "
+            + "or read without their textures, reading all models again");
+        loadRoots(roots, ModelCache.empty(AddonConfig.get().getCacheFile()), true);
+        resolveModels();
+      }
+    } finally {
+      RenderMetrics.INSTANCE.loadResources().record(System.nanoTime() - start);
+    }
+  }
+
+  private void loadRoots(Iterable<Path> roots, ModelCache cache, boolean plainTextures)
+      throws IOException, InterruptedException {
+    this.cache = cache;
+    this.plainTextures = plainTextures;
+    clearSources();
+
     for (Path root : roots) {
-      blueMapResourcePack.loadResourcePath(root, this::loadResourcesFromPath);
+      String rootId = root.toAbsolutePath().normalize().toString();
+
+      if (Files.isRegularFile(root)) {
+        long size = Files.size(root);
+        long modified = Files.getLastModifiedTime(root).toMillis();
+        if (loadFromCache(cache.getArchive(rootId, size, modified)))
+          continue;
+
+        // Archives are cached as a whole, entries without a model still hide later roots' models
+        blueMapResourcePack.loadResourcePath(root, path -> cache.put(new ModelCache.Root(rootId,
+            size, modified, loadResourcesFromPath(path, Map.of(), false))));
+      } else {
+        Map<String, ModelCache.Entry> cached = cache.getFolderEntries(rootId);
+        blueMapResourcePack.loadResourcePath(root,
+            path -> cache.put(new ModelCache.Root(rootId, -1, hashBlockStateFiles(path),
+                loadResourcesFromPath(path, cached, true))));
+      }
     }
   }
 
+  /**
+   * Loads the models of a single folder or unpacked root without the model cache, for tools that
+   * run without BlueMap's resource pack.
+   */
   public void loadResourcesFromPath(Path root) throws IOException {
-    ResourcePack.list(root.resolve("assets"))
+    cache = ModelCache.empty(null);
+    plainTextures = false;
+    clearSources();
+    loadResourcesFromPath(root, Map.of(), false);
+    if (!resolveModels()) {
+      // Nothing comes from the cache, a model read without its textures was needed
+      plainTextures = true;
+      clearSources();
+      loadResourcesFromPath(root, Map.of(), false);
+      resolveModels();
+    }
+  }
+
+  private void clearSources() {
+    sources.clear();
+    prunedParents.clear();
+    loadedKeys.clear();
+  }
+
+  /**
+   * Loads the models of a root, files whose cached entry matches their size and modification time
+   * are not read again.
+   *
+   * @return the cache entries of the root
+   */
+  private List<ModelCache.Entry> loadResourcesFromPath(Path root,
+      Map<String, ModelCache.Entry> cached, boolean checkFiles) throws IOException {
+    List<Path> files = ResourcePack.list(root.resolve("assets"))
         .map(path -> path.resolve("models").resolve("block"))
         .flatMap(ResourcePack::walk)
         .filter(path -> path.getFileName().toString().endsWith(".json"))
         .filter(Files::isRegularFile)
-        .forEach(file -> models.load(
-            new ResourcePath<>(root.relativize(file), 1, 3), key -> {
-              try (BufferedReader reader = Files.newBufferedReader(file)) {
-                return ResourcesGson.INSTANCE.fromJson(reader, BranchModelExtension.class);
-              }
-            }));
+        .toList();
+
+    List<ResourcePath<BranchModelExtension>> paths = files.stream()
+        .map(file -> new ResourcePath<BranchModelExtension>(root.relativize(file), 1, 3))
+        .toList();
+
+    // Parse in parallel, but add the models in walk order like a sequential load would
+    ModelCache.Entry[] entries = new ModelCache.Entry[files.size()];
+    IntStream.range(0, files.size()).parallel().forEach(i -> {
+      entries[i] = loadEntry(files.get(i), paths.get(i), cached, checkFiles);
+    });
+
+    for (int i = 0; i < entries.length; i++) {
+      addSource(paths.get(i), entries[i]);
+    }
+    return List.of(entries);
+  }
+
+  private ModelCache.Entry loadEntry(Path file, ResourcePath<BranchModelExtension> path,
+      Map<String, ModelCache.Entry> cached, boolean checkFiles) {
+    String key = path.getFormatted();
+    long size = 0;
+    long modified = 0;
+    if (checkFiles) {
+      try {
+        size = Files.size(file);
+        modified = Files.getLastModifiedTime(file).toMillis();
+      } catch (IOException e) {
+        size = -1;
+      }
+
+      ModelCache.Entry entry = cached.get(key);
+      if (entry != null && entry.read() && entry.size() == size && entry.modified() == modified)
+        return entry;
+    }
+
+    if (loadedKeys.contains(path))
+      return new ModelCache.Entry(key, size, modified, false, null, false);
+
+    ModelSource source = loadModel(file, plainTextures);
+    if (source == ModelSource.SKIPPED_TEXTURES) {
+      source = loadModel(file, true);
+    }
+    boolean pruned = source != null && source.isWithoutTextures();
+    return new ModelCache.Entry(key, size, modified, true, source, pruned);
+  }
+
+  private void addSource(Key key, ModelCache.Entry entry) {
+    if (!entry.read() || !loadedKeys.add(key))
+      return;
+
+    ModelSource source = entry.source();
+    if (source == null)
+      return;
+
+    if (entry.pruned()) {
+      prunedParents.put(key, Optional.ofNullable(source.parent()));
+    } else {
+      sources.put(key, source);
+    }
+  }
+
+  /**
+   * Adds the models of an unchanged archive. Fails if the archive has a model that was left out
+   * because another root had it, but no root before this one has it anymore.
+   */
+  private boolean loadFromCache(@Nullable ModelCache.Root root) {
+    if (root == null)
+      return false;
+
+    for (ModelCache.Entry entry : root.entries()) {
+      if (!entry.read() && !loadedKeys.contains(new Key(entry.key())))
+        return false;
+    }
+
+    for (ModelCache.Entry entry : root.entries()) {
+      addSource(new Key(entry.key()), entry);
+    }
+    cache.put(root);
+    return true;
+  }
+
+  /**
+   * Block states are not cached per file, so the cached list of block states using Dynamic Trees
+   * models is only valid while a folder's block state files stay the same.
+   */
+  private static long hashBlockStateFiles(Path root) throws IOException {
+    List<Path> files = ResourcePack.list(root.resolve("assets"))
+        .map(path -> path.resolve("blockstates"))
+        .flatMap(ResourcePack::walk)
+        .filter(Files::isRegularFile)
+        .sorted()
+        .toList();
+
+    long hash = 1;
+    for (Path file : files) {
+      hash = hash * 31 + root.relativize(file).toString().hashCode();
+      hash = hash * 31 + Files.size(file);
+      hash = hash * 31 + Files.getLastModifiedTime(file).toMillis();
+    }
+    return hash;
+  }
+
+  private static @Nullable ModelSource loadModel(Path file, boolean plainTextures) {
+    try (JsonReader reader = new JsonReader(Files.newBufferedReader(file))) {
+      reader.setLenient(true);
+      return ModelSource.read(reader, plainTextures);
+    } catch (Exception e) {
+      Logger.global.logDebug("Failed to load model '" + file + "': " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Applies the parents of every model read so far and adds the models ending up with a Dynamic
+   * Trees loader. Each model is resolved once however many children share it, so rendering never
+   * walks a parent chain. Runs once the roots are loaded, BlueMap collects the textures to load
+   * before it bakes the packs.
+   *
+   * <p>
+   * Only the Dynamic Trees models and the models they inherit from stay in the cache, the sources
+   * are dropped afterwards.
+   *
+   * @return {@code false} without adding any model if a model pruned from the cache or read without
+   *         its textures is needed
+   */
+  private boolean resolveModels() {
+    Map<Key, ModelSource> resolved = new HashMap<>();
+    Map<Key, ModelSource> treeModels = new HashMap<>();
+    for (Key key : sources.keySet()) {
+      ModelSource source = resolve(key, resolved, 0);
+      if (source != null && source.loader() != null) {
+        treeModels.put(key, source);
+      }
+    }
+
+    Set<Key> kept = new HashSet<>(treeModels.keySet());
+    for (Key key : treeModels.keySet()) {
+      Key parent = sources.get(key).parent();
+      for (int depth = 0; parent != null && depth < MAX_PARENT_DEPTH && kept.add(parent); depth++) {
+        if (!sources.containsKey(parent) && prunedParents.containsKey(parent))
+          return false;
+        ModelSource source = sources.get(parent);
+        parent = source != null ? source.parent() : null;
+      }
+    }
+
+    // A pruned model also needs to be read again once a parent gets a Dynamic Trees loader
+    for (Optional<Key> prunedParent : prunedParents.values()) {
+      Key parent = prunedParent.orElse(null);
+      for (int depth = 0; parent != null && depth < MAX_PARENT_DEPTH; depth++) {
+        if (treeModels.containsKey(parent))
+          return false;
+        Optional<Key> next = prunedParents.get(parent);
+        if (next == null)
+          break;
+        parent = next.orElse(null);
+      }
+    }
+
+    for (Map.Entry<Key, ModelSource> model : treeModels.entrySet()) {
+      ResourcePath<BranchModelExtension> path = new ResourcePath<>(model.getKey());
+      if (!models.contains(path)) {
+        models.put(path, model.getValue().toModel(
+            texture -> texturePaths.computeIfAbsent(texture, ResourcePath::new)));
+      }
+    }
+
+    cache.prune(kept);
+    clearSources();
+    return true;
+  }
+
+  /** The model with its parents applied, parents missing from the roots are left out. */
+  private @Nullable ModelSource resolve(Key key, Map<Key, ModelSource> resolved, int depth) {
+    ModelSource source = resolved.get(key);
+    if (source != null)
+      return source;
+
+    source = sources.get(key);
+    if (source == null)
+      return null;
+
+    if (source.parent() != null) {
+      // Deeper chains only happen in cycles
+      ModelSource parent = depth < MAX_PARENT_DEPTH
+          ? resolve(source.parent(), resolved, depth + 1)
+          : null;
+      source = parent != null ? source.withParent(parent)
+          : new ModelSource(null, source.loader(), source.textures());
+    }
+    resolved.put(key, source);
+    return source;
   }
 
   @Override
@@ -55,17 +372,161 @@ public class DynamicTreesPack implements ResourcePackExtension {
 
   @Override
   public void bake() throws IOException {
-    blueMapResourcePack.getBlockStates().values().forEach(blockState -> {
+    long start = System.nanoTime();
+    try {
+      bindVariants();
+    } finally {
+      RenderMetrics.INSTANCE.bake().record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Binds the variants of tree blocks to the renderer type of their loader and registers the blocks
+   * with their model, the renderers look the model up by block.
+   */
+  private void bindVariants() {
+    logFootprint();
+    texturePaths.clear();
+
+    Set<Key> checkedModels = new HashSet<>();
+    Map<Key, BranchModelExtension> boundLeaves = new HashMap<>();
+    Set<Key> treeBlockStates = new LinkedHashSet<>();
+    var blockStates = blueMapResourcePack.getBlockStates();
+    // In the vanilla leaves mode BlueMap renders the leaves itself
+    boolean bindLeaves = AddonConfig.get().isLeavesRendered();
+
+    // Without changes to the packs only the block states found last time need to be visited
+    Collection<? extends Key> paths = cache.getTreeBlockStates();
+    if (paths == null) {
+      paths = blockStates.paths();
+    }
+
+    for (Key path : paths) {
+      var blockState = blockStates.get(path);
+      if (blockState == null)
+        continue;
+
+      boolean leaves = blockIndex.getKind(path) == TreeBlockInfo.Kind.LEAVES;
+      if (leaves) {
+        // Listed either way, the cached block states stay valid when the leaves mode changes
+        treeBlockStates.add(path);
+        if (!bindLeaves)
+          continue;
+      }
+
+      SharedModel shared = new SharedModel();
       blockState.forEach(variant -> {
-        BranchModelExtension model = models.get(variant.getModel());
+        Key modelKey = variant.getModel();
+        BranchModelExtension model;
+        if (leaves) {
+          if (!boundLeaves.containsKey(modelKey)) {
+            boundLeaves.put(modelKey, readLeavesModel(modelKey));
+          }
+          model = boundLeaves.get(modelKey);
+        } else {
+          model = models.get(modelKey);
+          if (model != null && checkedModels.add(modelKey)) {
+            checkTextures(modelKey, model);
+          }
+        }
         if (model == null)
           return;
 
-        LoaderType loader = model.loader();
-        if (loader != null) {
-          variant.setRenderer(loader.renderer());
-        }
+        variant.setRenderer(model.loader().renderer());
+        shared.add(model);
       });
+
+      if (shared.loader != null) {
+        blockIndex.register(path, shared.loader, shared.model);
+        treeBlockStates.add(path);
+      }
+    }
+
+    cache.write(treeBlockStates);
+    // It holds an entry for every model file of every pack, nothing reads it again
+    cache = ModelCache.empty(null);
+    boundLeaves.values().removeIf(Objects::isNull);
+    this.leavesModels = Map.copyOf(boundLeaves);
+    averageColors = readAverageColors(Stream.concat(models.values().stream(),
+        this.leavesModels.values().stream()));
+  }
+
+  /**
+   * The model of a tree block variant, for blocks whose variants use different models. Leaves
+   * models are only found once the pack is baked.
+   */
+  public @Nullable BranchModelExtension getModel(Key modelKey) {
+    BranchModelExtension model = models.get(modelKey);
+    return model != null ? model : leavesModels.get(modelKey);
+  }
+
+  /** The model all bound variants of a block use, {@code null} if they use different ones. */
+  private static final class SharedModel {
+    private @Nullable LoaderType loader;
+    private @Nullable BranchModelExtension model;
+
+    private void add(BranchModelExtension variantModel) {
+      if (loader == null) {
+        loader = variantModel.loader();
+        model = variantModel;
+      } else if (model != variantModel) {
+        model = null;
+      }
+    }
+  }
+
+  /**
+   * The straight average color of a texture, transparent if the texture was not used by any model
+   * when the pack was baked.
+   */
+  public Color getAverageColor(@Nullable ResourcePath<Texture> texture) {
+    Color color = texture == null ? null : averageColors.get(texture);
+    return color != null ? color : TRANSPARENT;
+  }
+
+  private Map<Key, Color> readAverageColors(Stream<BranchModelExtension> boundModels) {
+    var textures = blueMapResourcePack.getTextures();
+    Map<Key, Color> colors = new HashMap<>();
+    boundModels.flatMap(BranchModelExtension::getUsedTextures).distinct().forEach(path -> {
+      Texture texture = textures.get(path);
+      if (texture != null) {
+        colors.put(path, new Color().set(texture.getColorStraight()));
+      }
     });
+    return Map.copyOf(colors);
+  }
+
+  /**
+   * Leaves use plain block models, their texture is the {@code all} texture or else the first one
+   * set. Without one BlueMap keeps rendering the leaves.
+   */
+  private @Nullable BranchModelExtension readLeavesModel(Key modelKey) {
+    Model model = blueMapResourcePack.getModels().get(modelKey);
+    if (model == null)
+      return null;
+
+    Map<String, TextureVariable> textures = model.getTextures();
+    TextureVariable texture = textures.get("all");
+    if (texture == null || texture.isReference()) {
+      texture = textures.values().stream()
+          .filter(variable -> !variable.isReference() && variable.getTexturePath() != null)
+          .findFirst().orElse(null);
+    }
+    if (texture == null || texture.getTexturePath() == null)
+      return null;
+
+    return new BranchModelExtension(LoaderType.LEAVES, texture.getTexturePath(), null);
+  }
+
+  private void logFootprint() {
+    Logger.global.logDebug("Loaded " + models.values().size() + " Dynamic Trees models using "
+        + texturePaths.size() + " distinct textures");
+  }
+
+  private static void checkTextures(Key modelKey, BranchModelExtension model) {
+    if (!model.hasTextures()) {
+      Logger.global.logWarning("Dynamic Trees model " + modelKey.getFormatted()
+          + " is missing its bark or rings texture, blocks using it will not be rendered");
+    }
   }
 }
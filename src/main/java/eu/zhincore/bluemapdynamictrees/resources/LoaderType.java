@@ -3,6 +3,8 @@ package eu.zhincore.bluemapdynamictrees.resources;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.Nullable;
 import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.stream.JsonReader;
@@ -11,6 +13,7 @@ import de.bluecolored.bluemap.core.map.hires.block.BlockRendererType;
 import de.bluecolored.bluemap.core.util.Key;
 import eu.zhincore.bluemapdynamictrees.BlueMapDynamicTreesAddon;
 import eu.zhincore.bluemapdynamictrees.render.BranchModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.LeavesRenderer;
 import eu.zhincore.bluemapdynamictrees.render.SurfaceRootModelRenderer;
 import lombok.Getter;
 import lombok.experimental.Accessors;
@@ -18,29 +21,45 @@ import lombok.experimental.Accessors;
 @Accessors(fluent = true)
 @JsonAdapter(LoaderType.Adapter.class)
 public enum LoaderType {
-  BRANCH("branch", BranchModelRenderer.TYPE), ROOT("surface_root", SurfaceRootModelRenderer.TYPE);
+  BRANCH("branch", () -> BranchModelRenderer.TYPE),
+  ROOT("surface_root", () -> SurfaceRootModelRenderer.TYPE),
+  /** Leaves have no model loader, their block states are bound by block id. */
+  LEAVES("leaves", () -> LeavesRenderer.TYPE);
 
   private static final Map<Key, LoaderType> BY_KEY;
   static {
     Map<Key, LoaderType> map = new HashMap<>();
     for (LoaderType type : values()) {
-      map.put(type.key, type);
+      if (type != LEAVES) {
+        map.put(type.key, type);
+      }
     }
     BY_KEY = Map.copyOf(map);
   }
 
   @Getter
   private final Key key;
-  @Getter
-  private final BlockRendererType renderer;
+  /**
+   * Read when first needed, initializing the renderers while the loader types are created would
+   * initialize the render metrics, which count blocks per loader type, too early.
+   */
+  private final Supplier<BlockRendererType> renderer;
 
-  LoaderType(String type, BlockRendererType renderer) {
+  LoaderType(String type, Supplier<BlockRendererType> renderer) {
     this.key = new Key(BlueMapDynamicTreesAddon.DT_ID, type);
     this.renderer = renderer;
   }
 
+  public BlockRendererType renderer() {
+    return renderer.get();
+  }
+
+  public static @Nullable LoaderType find(Key key) {
+    return BY_KEY.get(key);
+  }
+
   public static LoaderType fromKey(Key key) {
-    LoaderType type = BY_KEY.get(key);
+    LoaderType type = find(key);
     if (type == null) {
       throw new IllegalArgumentException("Unknown loader type: " + key.getFormatted());
     }
@@ -0,0 +1,299 @@
+package eu.zhincore.bluemapdynamictrees.resources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.util.Key;
+
+/**
+ * Keeps the models read from each resource root and the block states using them across restarts.
+ * Archives are reused as a whole while their size and modification time match, in folders every
+ * model file is checked on its own.
+ */
+final class ModelCache {
+  private static final int MAGIC = 0x44544d43;
+  private static final int VERSION = 4;
+  /**
+   * Written after the version, caches of another addon build or filtering other loaders are
+   * discarded even if the format did not change.
+   */
+  private static final String RULES = readAddonVersion() + " "
+      + Arrays.stream(LoaderType.values()).map(type -> type.key().getFormatted()).toList();
+
+  private static final byte NO_MODEL = -1;
+  private static final byte NOT_READ = -2;
+  private static final byte PRUNED = -3;
+  private static final byte MODEL = 0;
+  private static final byte NO_LOADER = -1;
+
+  private final @Nullable Path file;
+  private final Map<String, Root> previous;
+  private final Map<String, Root> current = new LinkedHashMap<>();
+  private final @Nullable List<Key> previousTreeBlockStates;
+
+  private ModelCache(@Nullable Path file, Map<String, Root> previous,
+      @Nullable List<Key> previousTreeBlockStates) {
+    this.file = file;
+    this.previous = previous;
+    this.previousTreeBlockStates = previousTreeBlockStates;
+  }
+
+  /**
+   * A model file of a root.
+   *
+   * @param key      the key of the model
+   * @param size     the file size, unused for archives
+   * @param modified the file modification time, unused for archives
+   * @param read     whether the file was read, files whose model was already loaded from another
+   *                 root are not
+   * @param source   the model as written in the file, {@code null} for models with another loader
+   *                 or nothing a Dynamic Trees model could inherit
+   * @param pruned   whether no Dynamic Trees model inherited from the model when it was cached, or
+   *                 it was read without its textures, only the parent of its source is kept then
+   */
+  record Entry(String key, long size, long modified, boolean read,
+      @Nullable ModelSource source, boolean pruned) {
+  }
+
+  /**
+   * @param size     the archive size, or -1 for folders
+   * @param modified the archive modification time, or a hash of the folder's block state files
+   */
+  record Root(String id, long size, long modified, List<Entry> entries) {
+  }
+
+  /** A cache reusing nothing, written to the file like one read from it. */
+  static ModelCache empty(@Nullable Path file) {
+    return new ModelCache(file, Map.of(), null);
+  }
+
+  static ModelCache read(@Nullable Path file) {
+    if (file == null)
+      return new ModelCache(null, Map.of(), null);
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(RULES))
+        return new ModelCache(file, Map.of(), null);
+
+      // Texture values repeat across models, share them
+      Map<String, String> strings = new HashMap<>();
+      Function<String, String> shared = value -> strings.computeIfAbsent(value, v -> v);
+
+      Map<String, Root> roots = new LinkedHashMap<>();
+      int rootCount = in.readInt();
+      for (int i = 0; i < rootCount; i++) {
+        String id = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+
+        int entryCount = in.readInt();
+        List<Entry> entries = new ArrayList<>(entryCount);
+        for (int j = 0; j < entryCount; j++) {
+          entries.add(readEntry(in, shared));
+        }
+        roots.put(id, new Root(id, size, modified, entries));
+      }
+
+      int blockStateCount = in.readInt();
+      List<Key> treeBlockStates = new ArrayList<>(blockStateCount);
+      for (int i = 0; i < blockStateCount; i++) {
+        treeBlockStates.add(new Key(in.readUTF()));
+      }
+
+      return new ModelCache(file, roots, treeBlockStates);
+    } catch (NoSuchFileException e) {
+      return new ModelCache(file, Map.of(), null);
+    } catch (IOException | RuntimeException e) {
+      Logger.global.logDebug("Failed to read the Dynamic Trees model cache, ignoring it: " + e);
+      return new ModelCache(file, Map.of(), null);
+    }
+  }
+
+  /** The version in the addon's {@code bluemap.addon.json}, empty if it can't be read. */
+  private static String readAddonVersion() {
+    try (InputStream in = ModelCache.class.getResourceAsStream("/bluemap.addon.json")) {
+      if (in == null)
+        return "";
+
+      JsonObject addon = JsonParser
+          .parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject();
+      return addon.has("version") ? addon.get("version").getAsString() : "";
+    } catch (IOException | RuntimeException e) {
+      return "";
+    }
+  }
+
+  /** The cached root if the archive did not change since it was cached. */
+  @Nullable
+  Root getArchive(String id, long size, long modified) {
+    Root root = previous.get(id);
+    if (root == null || root.size() != size || root.modified() != modified)
+      return null;
+    return root;
+  }
+
+  /** The cached entries of a folder root, by model key. */
+  Map<String, Entry> getFolderEntries(String id) {
+    Root root = previous.get(id);
+    if (root == null || root.size() != -1)
+      return Map.of();
+
+    Map<String, Entry> entries = new HashMap<>();
+    for (Entry entry : root.entries()) {
+      entries.put(entry.key(), entry);
+    }
+    return entries;
+  }
+
+  void put(Root root) {
+    current.put(root.id(), root);
+  }
+
+  /** Prunes the models without a loader that are not in {@code kept}. */
+  void prune(Set<Key> kept) {
+    for (Map.Entry<String, Root> rootEntry : current.entrySet()) {
+      Root root = rootEntry.getValue();
+      List<Entry> entries = new ArrayList<>(root.entries().size());
+      boolean changed = false;
+      for (Entry entry : root.entries()) {
+        ModelSource source = entry.source();
+        if (source != null && !entry.pruned() && source.loader() == null
+            && !kept.contains(new Key(entry.key()))) {
+          entry = new Entry(entry.key(), entry.size(), entry.modified(), true,
+              new ModelSource(source.parent(), null, Map.of()), true);
+          changed = true;
+        }
+        entries.add(entry);
+      }
+      if (changed) {
+        rootEntry.setValue(new Root(root.id(), root.size(), root.modified(), List.copyOf(entries)));
+      }
+    }
+  }
+
+  /**
+   * The block states that used Dynamic Trees models, if no root changed and they can be taken from
+   * the cache. {@code null} otherwise.
+   */
+  @Nullable
+  Collection<Key> getTreeBlockStates() {
+    if (previousTreeBlockStates == null || !previous.equals(current)
+        || !List.copyOf(previous.keySet()).equals(List.copyOf(current.keySet())))
+      return null;
+    return previousTreeBlockStates;
+  }
+
+  void write(Collection<? extends Key> treeBlockStates) {
+    if (file == null)
+      return;
+
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(RULES);
+
+        out.writeInt(current.size());
+        for (Root root : current.values()) {
+          out.writeUTF(root.id());
+          out.writeLong(root.size());
+          out.writeLong(root.modified());
+          out.writeInt(root.entries().size());
+          for (Entry entry : root.entries()) {
+            writeEntry(out, entry);
+          }
+        }
+
+        out.writeInt(treeBlockStates.size());
+        for (Key blockState : treeBlockStates) {
+          out.writeUTF(blockState.getFormatted());
+        }
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Logger.global.logWarning("Failed to write the Dynamic Trees model cache: " + e);
+    }
+  }
+
+  private static Entry readEntry(DataInputStream in, Function<String, String> shared)
+      throws IOException {
+    String key = in.readUTF();
+    long size = in.readLong();
+    long modified = in.readLong();
+
+    byte kind = in.readByte();
+    if (kind == NOT_READ)
+      return new Entry(key, size, modified, false, null, false);
+    if (kind == NO_MODEL)
+      return new Entry(key, size, modified, true, null, false);
+
+    String parent = in.readUTF();
+    if (kind == PRUNED) {
+      return new Entry(key, size, modified, true,
+          new ModelSource(parent.isEmpty() ? null : new Key(parent), null, Map.of()), true);
+    }
+
+    byte loader = in.readByte();
+    int textureCount = in.readInt();
+    Map<String, String> textures = new HashMap<>();
+    for (int i = 0; i < textureCount; i++) {
+      textures.put(shared.apply(in.readUTF()), shared.apply(in.readUTF()));
+    }
+
+    ModelSource source = new ModelSource(parent.isEmpty() ? null : new Key(parent),
+        loader == NO_LOADER ? null : LoaderType.values()[loader], Map.copyOf(textures));
+    return new Entry(key, size, modified, true, source, false);
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    out.writeUTF(entry.key());
+    out.writeLong(entry.size());
+    out.writeLong(entry.modified());
+
+    ModelSource source = entry.source();
+    if (!entry.read()) {
+      out.writeByte(NOT_READ);
+    } else if (source == null) {
+      out.writeByte(NO_MODEL);
+    } else if (entry.pruned()) {
+      out.writeByte(PRUNED);
+      out.writeUTF(source.parent() == null ? "" : source.parent().getFormatted());
+    } else {
+      out.writeByte(MODEL);
+      out.writeUTF(source.parent() == null ? "" : source.parent().getFormatted());
+      out.writeByte(source.loader() == null ? NO_LOADER : source.loader().ordinal());
+      out.writeInt(source.textures().size());
+      for (Map.Entry<String, String> texture : source.textures().entrySet()) {
+        out.writeUTF(texture.getKey());
+        out.writeUTF(texture.getValue());
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package eu.zhincore.bluemapdynamictrees.resources;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.resources.pack.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.util.Key;
+
+/**
+ * A block model as written in its file, before the loader and textures of its parents are applied.
+ * Only the parent, the loader and the texture variables are kept.
+ *
+ * @param loader   the Dynamic Trees loader, {@code null} if the model sets none
+ * @param textures the texture variables, values starting with {@code #} refer to other variables
+ */
+record ModelSource(@Nullable Key parent, @Nullable LoaderType loader,
+    Map<String, String> textures) {
+  private static final String BARK = "bark";
+  private static final String RINGS = "rings";
+  /** References between texture variables followed at most, more only happen in cycles. */
+  private static final int MAX_REFERENCES = 16;
+
+  /**
+   * Returned by {@link #read(JsonReader, boolean)} for Dynamic Trees models setting their textures
+   * before their loader, they have to be read again with the textures.
+   */
+  static final ModelSource SKIPPED_TEXTURES = new ModelSource(null, null, Map.of());
+  /** The textures of models without a loader read without textures, told apart by identity. */
+  private static final Map<String, String> SKIPPED = Collections.unmodifiableMap(new HashMap<>());
+
+  /**
+   * Reads a block model, returns {@code null} for models with another loader and models setting
+   * none of parent, loader and textures. Everything else is skipped without being parsed.
+   *
+   * @param plainTextures whether the textures of models without a loader are read, without them
+   *                      such models only keep their parent
+   */
+  static @Nullable ModelSource read(JsonReader reader, boolean plainTextures) throws IOException {
+    Key parent = null;
+    LoaderType loader = null;
+    Map<String, String> textures = Map.of();
+    boolean skippedTextures = false;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "parent":
+          if (reader.peek() == JsonToken.STRING) {
+            parent = Key.parse(reader.nextString());
+          } else {
+            reader.skipValue();
+          }
+          break;
+        case "loader":
+          if (reader.peek() != JsonToken.STRING)
+            return null;
+
+          // Most models with a loader are no Dynamic Trees models, stop before reading the rest
+          loader = LoaderType.find(Key.parse(reader.nextString()));
+          if (loader == null)
+            return null;
+          break;
+        case "textures":
+          if (loader == null && !plainTextures) {
+            reader.skipValue();
+            skippedTextures = true;
+          } else {
+            textures = readTextures(reader);
+          }
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
+    }
+    reader.endObject();
+
+    if (skippedTextures)
+      return loader != null ? SKIPPED_TEXTURES : new ModelSource(parent, null, SKIPPED);
+    if (parent == null && loader == null && textures.isEmpty())
+      return null;
+    return new ModelSource(parent, loader, textures);
+  }
+
+  private static Map<String, String> readTextures(JsonReader reader) throws IOException {
+    Map<String, String> textures = new HashMap<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.STRING) {
+        textures.put(name, reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return Map.copyOf(textures);
+  }
+
+  /** Whether the model has no loader and was read without its textures. */
+  boolean isWithoutTextures() {
+    return textures == SKIPPED;
+  }
+
+  /**
+   * The model with the loader and textures of its resolved parent applied where it sets none of
+   * its own.
+   */
+  ModelSource withParent(ModelSource parent) {
+    Map<String, String> merged;
+    if (textures.isEmpty()) {
+      merged = parent.textures;
+    } else if (parent.textures.isEmpty()) {
+      merged = textures;
+    } else {
+      Map<String, String> combined = new HashMap<>(parent.textures);
+      combined.putAll(textures);
+      merged = Map.copyOf(combined);
+    }
+    return new ModelSource(null, loader != null ? loader : parent.loader, merged);
+  }
+
+  /**
+   * The renderable model, {@code null} without a Dynamic Trees loader. References between texture
+   * variables are followed, parents have to be applied first.
+   *
+   * @param texturePaths creates the path of a texture, allows sharing paths between models
+   */
+  @Nullable
+  BranchModelExtension toModel(Function<String, ResourcePath<Texture>> texturePaths) {
+    if (loader == null)
+      return null;
+    return new BranchModelExtension(loader, getTexture(BARK, texturePaths),
+        getTexture(RINGS, texturePaths));
+  }
+
+  private @Nullable ResourcePath<Texture> getTexture(String name,
+      Function<String, ResourcePath<Texture>> texturePaths) {
+    String texture = textures.get(name);
+    for (int i = 0; texture != null && texture.startsWith("#"); i++) {
+      if (i == MAX_REFERENCES)
+        return null;
+      texture = textures.get(texture.substring(1));
+    }
+    return texture == null ? null : texturePaths.apply(texture);
+  }
+}
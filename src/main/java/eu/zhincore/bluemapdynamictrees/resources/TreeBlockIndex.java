@@ -0,0 +1,94 @@
+package eu.zhincore.bluemapdynamictrees.resources;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.Nullable;
+import de.bluecolored.bluemap.core.util.Key;
+import de.bluecolored.bluemap.core.world.BlockState;
+import eu.zhincore.bluemapdynamictrees.BlueMapDynamicTreesAddon;
+
+/**
+ * Maps block states to their {@link TreeBlockInfo}. Blocks with Dynamic Trees models are registered
+ * when the resource pack is baked, every other block is classified the first time it is seen.
+ * Either way a state's id and properties are parsed only once.
+ */
+public class TreeBlockIndex {
+  /** The species of all {@link TreeBlockInfo.Kind#OTHER} blocks, never given to a tree block. */
+  public static final int NO_SPECIES = 0;
+  private static final TreeBlockInfo OTHER =
+      new TreeBlockInfo(TreeBlockInfo.Kind.OTHER, NO_SPECIES, 0, null);
+
+  private final ConcurrentHashMap<Key, TreeBlockInfo> blocks = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<BlockState, TreeBlockInfo> states = new ConcurrentHashMap<>();
+  private final AtomicInteger nextSpecies = new AtomicInteger(NO_SPECIES + 1);
+
+  /**
+   * Registers a block with a Dynamic Trees model, called when the pack is baked.
+   *
+   * @param model the model of all variants of the block, {@code null} if they use different models
+   */
+  public void register(Key block, LoaderType loader, @Nullable BranchModelExtension model) {
+    var kind = switch (loader) {
+      case BRANCH -> TreeBlockInfo.Kind.BRANCH;
+      case ROOT -> TreeBlockInfo.Kind.ROOT;
+      case LEAVES -> TreeBlockInfo.Kind.LEAVES;
+    };
+    TreeBlockInfo previous = blocks.get(block);
+    if (previous != null && previous.kind() == kind && previous.model() == model)
+      return;
+
+    int species = previous != null && previous.kind() == kind ? previous.species()
+        : nextSpecies.getAndIncrement();
+    blocks.put(block, new TreeBlockInfo(kind, species, 0, model));
+    states.clear();
+  }
+
+  /** How the renderers treat the block, by its id. */
+  TreeBlockInfo.Kind getKind(Key block) {
+    TreeBlockInfo info = blocks.get(block);
+    return info != null ? info.kind() : blocks.computeIfAbsent(block, this::classify).kind();
+  }
+
+  public TreeBlockInfo get(BlockState state) {
+    TreeBlockInfo info = states.get(state);
+    if (info != null)
+      return info;
+
+    return states.computeIfAbsent(state, this::classify);
+  }
+
+  private TreeBlockInfo classify(BlockState state) {
+    TreeBlockInfo block = blocks.computeIfAbsent(state.getId(), this::classify);
+    int radius = parseRadius(state.getProperties().get("radius"));
+    return new TreeBlockInfo(block.kind(), block.species(), radius, block.model());
+  }
+
+  private TreeBlockInfo classify(Key id) {
+    TreeBlockInfo.Kind kind = TreeBlockInfo.Kind.OTHER;
+    if (BlueMapDynamicTreesAddon.DT_ID.equals(id.getNamespace())) {
+      if (id.getValue().contains("leaves")) {
+        kind = TreeBlockInfo.Kind.LEAVES;
+      } else if (id.getValue().contains("rooty")) {
+        kind = TreeBlockInfo.Kind.ROOTY_SOIL;
+      }
+    }
+    if (kind == TreeBlockInfo.Kind.OTHER)
+      return OTHER;
+
+    return new TreeBlockInfo(kind, nextSpecies.getAndIncrement(), 0, null);
+  }
+
+  private static int parseRadius(String value) {
+    if (value == null || value.isEmpty() || value.length() > 2)
+      return 0;
+
+    int radius = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9')
+        return 0;
+      radius = radius * 10 + (c - '0');
+    }
+    return radius;
+  }
+}
@@ -0,0 +1,20 @@
+package eu.zhincore.bluemapdynamictrees.resources;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What the tree renderers need to know about a block state.
+ *
+ * @param kind    how the renderers treat the block
+ * @param species id shared by all states of the same block, used to match connected branches, or
+ *                {@link TreeBlockIndex#NO_SPECIES} for blocks the renderers don't look into
+ * @param radius  the value of the {@code radius} property, or 0
+ * @param model   the Dynamic Trees model of all variants of the block, {@code null} if they use
+ *                different models or the block has none
+ */
+public record TreeBlockInfo(Kind kind, int species, int radius,
+    @Nullable BranchModelExtension model) {
+  public enum Kind {
+    BRANCH, ROOT, LEAVES, ROOTY_SOIL, OTHER
+  }
+}
@@ -0,0 +1,131 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.Arrays;
+import de.bluecolored.bluemap.core.map.hires.ArrayTileModel;
+
+/**
+ * {@link ArrayTileModel} that hashes every triangle on the way in. The checksum adds up the hashes
+ * of all triangles, so it does not depend on the order they were emitted in. Positions are moved to
+ * the world position of the rendered block and rounded to 1/4096 of a block.
+ *
+ * <p>
+ * Every setter keeps the hash of the values it last wrote per triangle, so like the model itself
+ * the checksum holds whatever a triangle was last given, also across {@link #clear()}.
+ */
+public final class ChecksumTileModel extends ArrayTileModel {
+  private static final double POSITION_SCALE = 4096;
+  private static final double UV_SCALE = 1 << 16;
+
+  private static final int POSITIONS = 0;
+  private static final int UVS = 1;
+  private static final int AOS = 2;
+  private static final int COLOR = 3;
+  private static final int SUNLIGHT = 4;
+  private static final int BLOCKLIGHT = 5;
+  private static final int MATERIAL = 6;
+  private static final int SETTERS = 7;
+
+  private final long[][] setterHashes = new long[SETTERS][1024];
+  private int originX, originY, originZ;
+
+  public ChecksumTileModel(int capacity) {
+    super(capacity);
+  }
+
+  /** The world position of the block rendered next. */
+  public void setOrigin(int x, int y, int z) {
+    originX = x;
+    originY = y;
+    originZ = z;
+  }
+
+  public long getChecksum() {
+    long checksum = 0;
+    for (int i = 0; i < size(); i++) {
+      long hash = 0;
+      // Setters are combined in any order, only the values of each setter are ordered
+      for (long[] hashes : setterHashes) {
+        hash += i < hashes.length ? mix(hashes[i]) : 0;
+      }
+      checksum += mix(hash);
+    }
+    return checksum;
+  }
+
+  @Override
+  public ChecksumTileModel setPositions(int face, float x1, float y1, float z1, float x2, float y2,
+      float z2, float x3, float y3, float z3) {
+    super.setPositions(face, x1, y1, z1, x2, y2, z2, x3, y3, z3);
+    long hash = hash(POSITIONS, x1 + originX, y1 + originY, z1 + originZ, POSITION_SCALE);
+    hash = hash(hash, x2 + originX, y2 + originY, z2 + originZ, POSITION_SCALE);
+    hash = hash(hash, x3 + originX, y3 + originY, z3 + originZ, POSITION_SCALE);
+    record(POSITIONS, face, hash);
+    return this;
+  }
+
+  @Override
+  public ChecksumTileModel setUvs(int face, float u1, float v1, float u2, float v2, float u3,
+      float v3) {
+    super.setUvs(face, u1, v1, u2, v2, u3, v3);
+    long hash = hash(UVS, u1, v1, u2, UV_SCALE);
+    record(UVS, face, hash(hash, v2, u3, v3, UV_SCALE));
+    return this;
+  }
+
+  @Override
+  public ChecksumTileModel setAOs(int face, float ao1, float ao2, float ao3) {
+    super.setAOs(face, ao1, ao2, ao3);
+    record(AOS, face, hash(AOS, ao1, ao2, ao3, UV_SCALE));
+    return this;
+  }
+
+  @Override
+  public ChecksumTileModel setColor(int face, float r, float g, float b) {
+    super.setColor(face, r, g, b);
+    record(COLOR, face, hash(COLOR, r, g, b, UV_SCALE));
+    return this;
+  }
+
+  @Override
+  public ChecksumTileModel setSunlight(int face, int sl) {
+    super.setSunlight(face, sl);
+    record(SUNLIGHT, face, SUNLIGHT * 31L + sl);
+    return this;
+  }
+
+  @Override
+  public ChecksumTileModel setBlocklight(int face, int bl) {
+    super.setBlocklight(face, bl);
+    record(BLOCKLIGHT, face, BLOCKLIGHT * 31L + bl);
+    return this;
+  }
+
+  @Override
+  public ChecksumTileModel setMaterialIndex(int face, int m) {
+    super.setMaterialIndex(face, m);
+    record(MATERIAL, face, MATERIAL * 31L + m);
+    return this;
+  }
+
+  private void record(int setter, int face, long hash) {
+    long[] hashes = setterHashes[setter];
+    if (face >= hashes.length) {
+      hashes = Arrays.copyOf(hashes, Math.max(face + 1, hashes.length * 2));
+      setterHashes[setter] = hashes;
+    }
+    hashes[face] = hash;
+  }
+
+  /** Adds three values rounded to {@code 1 / scale} to the hash. */
+  private static long hash(long hash, float a, float b, float c, double scale) {
+    hash = hash * 31 + Math.round(a * scale);
+    hash = hash * 31 + Math.round(b * scale);
+    return hash * 31 + Math.round(c * scale);
+  }
+
+  private static long mix(long hash) {
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+}
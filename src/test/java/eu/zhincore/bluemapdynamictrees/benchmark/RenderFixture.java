@@ -0,0 +1,105 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.render.AbstractDynamicTreeRenderer;
+import eu.zhincore.bluemapdynamictrees.render.BranchModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.LeavesRenderer;
+import eu.zhincore.bluemapdynamictrees.render.SurfaceRootModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.TreeNeighborhood;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+
+/**
+ * Renders every block of a {@link TreeScene} into a real tile model and reports the triangles and a
+ * checksum of the geometry. The checksum stays the same as long as the emitted triangles do,
+ * whatever order they come in.
+ */
+final class RenderFixture {
+  private static final int CAPACITY = 1 << 16;
+
+  private final TreeScene.Target[] targets;
+  private final InMemoryNeighborhood neighborhood;
+  private final AbstractDynamicTreeRenderer branchRenderer;
+  private final AbstractDynamicTreeRenderer rootRenderer;
+  private final AbstractDynamicTreeRenderer leavesRenderer;
+  private final BranchModelExtension branchModel = Fixtures.model(Fixtures.BRANCH_MODEL);
+  private final BranchModelExtension rootModel = Fixtures.model(Fixtures.ROOT_MODEL);
+  private final BranchModelExtension leavesModel = new BranchModelExtension(LoaderType.LEAVES,
+      new ResourcePath<>("minecraft:block/oak_leaves"), null);
+  private final ChecksumTileModel tileModel = new ChecksumTileModel(CAPACITY);
+  private final TileModelView blockModel = new TileModelView(tileModel);
+  private final Color color = new Color();
+
+  private long branchTriangles;
+  private long rootTriangles;
+  private long leavesTriangles;
+
+  public RenderFixture(TreeScene scene) {
+    List<TreeScene.Target> sceneTargets = new ArrayList<>(scene.getTargets());
+    sceneTargets.addAll(scene.getLeaves());
+    this.targets = sceneTargets.toArray(TreeScene.Target[]::new);
+    this.neighborhood = new InMemoryNeighborhood(scene);
+
+    DynamicTreesPack pack = Fixtures.pack(scene);
+    TextureGallery textureGallery = new TextureGallery();
+    RenderSettings renderSettings = Fixtures.renderSettings();
+    this.branchRenderer = new BranchModelRenderer(pack, textureGallery, renderSettings);
+    this.rootRenderer = new SurfaceRootModelRenderer(pack, textureGallery, renderSettings);
+    this.leavesRenderer = new LeavesRenderer(pack, textureGallery, renderSettings);
+  }
+
+  /** Renders all blocks of the scene once, the model then holds the whole scene. */
+  public void render() {
+    tileModel.clear();
+    branchTriangles = 0;
+    rootTriangles = 0;
+    leavesTriangles = 0;
+
+    for (TreeScene.Target target : targets) {
+      int before = tileModel.size();
+
+      tileModel.setOrigin(target.x(), target.y(), target.z());
+      blockModel.initialize();
+      TreeNeighborhood block = neighborhood.moveTo(target.x(), target.y(), target.z());
+      switch (target.kind()) {
+        case BRANCH -> branchRenderer.render(block, branchModel, blockModel, color);
+        case ROOT -> rootRenderer.render(block, rootModel, blockModel, color);
+        case LEAVES -> leavesRenderer.render(block, leavesModel, blockModel, color);
+      }
+
+      int triangles = tileModel.size() - before;
+      switch (target.kind()) {
+        case BRANCH -> branchTriangles += triangles;
+        case ROOT -> rootTriangles += triangles;
+        case LEAVES -> leavesTriangles += triangles;
+      }
+    }
+  }
+
+  public int getBlocks() {
+    return targets.length;
+  }
+
+  public long getBranchTriangles() {
+    return branchTriangles;
+  }
+
+  public long getRootTriangles() {
+    return rootTriangles;
+  }
+
+  public long getLeavesTriangles() {
+    return leavesTriangles;
+  }
+
+  public long getChecksum() {
+    return tileModel.getChecksum();
+  }
+}
@@ -0,0 +1,39 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+
+/**
+ * Pins the geometry of every {@link TreeScene} in the default profile. A change that is meant to
+ * alter the map updates the checksums along with it, the failure message has the new one.
+ */
+class RenderFixtureTest {
+
+  @ParameterizedTest
+  @CsvSource({
+      "trunk, 1312eb32ecfb2e25",
+      "thickTrunk, cbb9bde407405d97",
+      "fork, 5665e5724b666268",
+      "twigRing, c84e4c06d1f5895c",
+      "leafTwig, f465079c2e9687bf",
+      "surfaceRoot, 481441a9ea3c16ec",
+      "forest, e8eb9dd266e78188",
+  })
+  void checksumIsPinned(String sceneName, String checksum) {
+    Fixtures.useProfile(RenderProfile.FULL);
+    RenderFixture fixture = new RenderFixture(TreeScene.create(sceneName));
+    fixture.render();
+    long first = fixture.getChecksum();
+    // Cached templates and the section grid must not change what a second pass emits
+    fixture.render();
+
+    assertEquals(first, fixture.getChecksum(), "second pass of " + sceneName);
+    assertEquals(checksum, Long.toHexString(fixture.getChecksum()),
+        () -> sceneName + ": " + fixture.getBlocks() + " blocks, "
+            + fixture.getBranchTriangles() + " branch, " + fixture.getRootTriangles()
+            + " root and " + fixture.getLeavesTriangles() + " leaves triangles");
+  }
+}
@@ -0,0 +1,374 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.benchmark.TriangleRecorder.Triangle;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.render.AbstractDynamicTreeRenderer;
+import eu.zhincore.bluemapdynamictrees.render.BranchModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.LeavesRenderer;
+import eu.zhincore.bluemapdynamictrees.render.SurfaceRootModelRenderer;
+import eu.zhincore.bluemapdynamictrees.render.TreeNeighborhood;
+import eu.zhincore.bluemapdynamictrees.resources.BranchModelExtension;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPackFactory;
+import eu.zhincore.bluemapdynamictrees.resources.LoaderType;
+
+/**
+ * Renders random {@link TreeScene}s with the reference profile and with the fast paths (cached
+ * templates, culled faces, the section grid and bulk emission) in a detail and compares what can
+ * be seen of both.
+ *
+ * <p>
+ * Faces are one-sided like in BlueMap's web app, so a face only hides what lies behind it when it
+ * looks towards the viewer. Both outputs are rasterized from the six axis directions at 16 samples
+ * per block, offset so no sample falls on a pixel edge, and the front-most face wins at every
+ * sample. Blocks the renderers don't draw but cull against, stone and rooty soil, are added as
+ * opaque cubes, leaves count as opaque as well. At every sample both outputs need the same depth,
+ * texture, UV, light and color.
+ */
+final class RenderVerifier {
+  private static final int CAPACITY = 1 << 16;
+  private static final float EPSILON = 1e-4f;
+  private static final float UV_TOLERANCE = 1e-3f;
+  private static final int MAX_REPORTED = 20;
+  /** Samples per block along each axis of a view. */
+  private static final int RESOLUTION = 16;
+  /** Blocks around the scene geometry may reach into, like thick cores at its border. */
+  private static final int MARGIN = 1;
+  private static final int[] SCENE_SIZE = { TreeScene.SIZE_X, TreeScene.SIZE_Y, TreeScene.SIZE_Z };
+  /** Marks a sample showing a block the renderers don't draw. */
+  private static final int OPAQUE_BLOCK = -2;
+  private static final int EMPTY = -1;
+
+  /** Mismatches by scene, view and kind, with the number of samples and the first of them. */
+  private final Map<String, Mismatch> mismatches = new LinkedHashMap<>();
+
+  private static final class Mismatch {
+    private final String first;
+    private int samples;
+
+    private Mismatch(String first) {
+      this.first = first;
+    }
+  }
+
+  private record Renderers(DynamicTreesPack pack, AbstractDynamicTreeRenderer branch,
+      AbstractDynamicTreeRenderer root, AbstractDynamicTreeRenderer leaves) {
+  }
+
+  /** What one output shows from one direction, the front-most triangle of every sample. */
+  private static final class View {
+    private final int axis;
+    private final int sign;
+    private final int uAxis;
+    private final int vAxis;
+    private final int width;
+    private final int height;
+    private final float[] depth;
+    private final int[] triangle;
+
+    private View(int axis, int sign) {
+      this.axis = axis;
+      this.sign = sign;
+      this.uAxis = (axis + 1) % 3;
+      this.vAxis = (axis + 2) % 3;
+      this.width = (SCENE_SIZE[uAxis] + 2 * MARGIN) * RESOLUTION;
+      this.height = (SCENE_SIZE[vAxis] + 2 * MARGIN) * RESOLUTION;
+      this.depth = new float[width * height];
+      this.triangle = new int[width * height];
+    }
+
+    private void clear() {
+      Arrays.fill(depth, Float.NEGATIVE_INFINITY);
+      Arrays.fill(triangle, EMPTY);
+    }
+
+    private static float sample(int i) {
+      return (i + 0.25f) / RESOLUTION - MARGIN;
+    }
+
+    private static int firstSample(float min) {
+      return (int) Math.ceil((min + MARGIN) * RESOLUTION - 0.25f);
+    }
+
+    private static int lastSample(float max) {
+      return (int) Math.floor((max + MARGIN) * RESOLUTION - 0.25f);
+    }
+
+    /** Draws the triangle if it looks towards the viewer, ties keep what was drawn first. */
+    private void draw(Triangle t, int index) {
+      float[] normal = normal(t);
+      if (normal[axis] * sign <= EPSILON)
+        return;
+
+      float[] p = t.positions;
+      float minU = Math.min(p[uAxis], Math.min(p[3 + uAxis], p[6 + uAxis]));
+      float maxU = Math.max(p[uAxis], Math.max(p[3 + uAxis], p[6 + uAxis]));
+      float minV = Math.min(p[vAxis], Math.min(p[3 + vAxis], p[6 + vAxis]));
+      float maxV = Math.max(p[vAxis], Math.max(p[3 + vAxis], p[6 + vAxis]));
+      float d = p[axis] * sign;
+
+      for (int j = Math.max(0, firstSample(minV)); j <= Math.min(height - 1, lastSample(maxV));
+          j++) {
+        for (int i = Math.max(0, firstSample(minU)); i <= Math.min(width - 1, lastSample(maxU));
+            i++) {
+          int sample = j * width + i;
+          if (d > depth[sample] + EPSILON
+              && weights(t, uAxis, vAxis, sample(i), sample(j)) != null) {
+            depth[sample] = d;
+            triangle[sample] = index;
+          }
+        }
+      }
+    }
+
+    /** Draws the faces of a full block looking towards the viewer. */
+    private void drawBlock(int x, int y, int z) {
+      int[] block = { x, y, z };
+      float d = (block[axis] + (sign > 0 ? 1 : 0)) * sign;
+      for (int j = block[vAxis] * RESOLUTION; j < (block[vAxis] + 1) * RESOLUTION; j++) {
+        for (int i = block[uAxis] * RESOLUTION; i < (block[uAxis] + 1) * RESOLUTION; i++) {
+          int sample = (j + MARGIN * RESOLUTION) * width + i + MARGIN * RESOLUTION;
+          if (d > depth[sample] + EPSILON) {
+            depth[sample] = d;
+            triangle[sample] = OPAQUE_BLOCK;
+          }
+        }
+      }
+    }
+
+    private float[] position(int i, int j) {
+      float[] position = new float[3];
+      position[axis] = depth[j * width + i] * sign;
+      position[uAxis] = sample(i);
+      position[vAxis] = sample(j);
+      return position;
+    }
+
+    @Override
+    public String toString() {
+      return (sign > 0 ? "+" : "-") + "XYZ".charAt(axis);
+    }
+  }
+
+  /**
+   * Renders the scenes from the first seed on with the reference and the fast profile of the detail
+   * and describes the first {@link #MAX_REPORTED} mismatches, none if both look the same.
+   */
+  static List<String> verify(RenderProfile.Detail detail, boolean mergeTrunks, int scenes,
+      long firstSeed) {
+    Renderers referenceRenderers = createRenderers(new RenderProfile(detail, 3, 3, 0, mergeTrunks,
+        RenderProfile.Leaves.CULLED, true));
+    Renderers fastRenderers = createRenderers(new RenderProfile(detail, 3, 3, 0, mergeTrunks,
+        RenderProfile.Leaves.CULLED, false));
+
+    RenderVerifier verifier = new RenderVerifier();
+    for (long seed = firstSeed; seed < firstSeed + scenes; seed++) {
+      TreeScene scene = TreeScene.random(seed);
+      verifier.compare(scene.getName(), scene, render(scene, referenceRenderers),
+          render(scene, fastRenderers));
+    }
+
+    return verifier.mismatches.entrySet().stream().limit(MAX_REPORTED)
+        .map(e -> e.getKey() + " (" + e.getValue().samples + " samples): " + e.getValue().first)
+        .toList();
+  }
+
+  private static Renderers createRenderers(RenderProfile profile) {
+    Fixtures.useProfile(profile);
+    DynamicTreesPack pack = DynamicTreesPackFactory.INSTANCE.create(null);
+    TextureGallery textureGallery = new TextureGallery();
+    RenderSettings renderSettings = Fixtures.renderSettings();
+    return new Renderers(pack, new BranchModelRenderer(pack, textureGallery, renderSettings),
+        new SurfaceRootModelRenderer(pack, textureGallery, renderSettings),
+        new LeavesRenderer(pack, textureGallery, renderSettings));
+  }
+
+  private static List<Triangle> render(TreeScene scene, Renderers renderers) {
+    BranchModelExtension branchModel = Fixtures.model(Fixtures.BRANCH_MODEL);
+    BranchModelExtension rootModel = Fixtures.model(Fixtures.ROOT_MODEL);
+    BranchModelExtension leavesModel = new BranchModelExtension(LoaderType.LEAVES,
+        new ResourcePath<>("minecraft:block/oak_leaves"), null);
+
+    TriangleRecorder recorder = new TriangleRecorder(CAPACITY);
+    TileModelView blockModel = new TileModelView(recorder);
+    InMemoryNeighborhood neighborhood = new InMemoryNeighborhood(scene);
+    Color color = new Color();
+    Fixtures.registerBlocks(renderers.pack(), scene);
+
+    List<TreeScene.Target> targets = new ArrayList<>(scene.getTargets());
+    targets.addAll(scene.getLeaves());
+    for (TreeScene.Target target : targets) {
+      recorder.setOrigin(target.x(), target.y(), target.z());
+      blockModel.initialize();
+      TreeNeighborhood block = neighborhood.moveTo(target.x(), target.y(), target.z());
+      switch (target.kind()) {
+        case BRANCH -> renderers.branch().render(block, branchModel, blockModel, color);
+        case ROOT -> renderers.root().render(block, rootModel, blockModel, color);
+        case LEAVES -> renderers.leaves().render(block, leavesModel, blockModel, color);
+      }
+    }
+    return List.copyOf(recorder.getTriangles());
+  }
+
+  private final View[] referenceViews = createViews();
+  private final View[] fastViews = createViews();
+
+  private static View[] createViews() {
+    View[] views = new View[6];
+    for (int axis = 0; axis < 3; axis++) {
+      views[axis * 2] = new View(axis, 1);
+      views[axis * 2 + 1] = new View(axis, -1);
+    }
+    return views;
+  }
+
+  private void compare(String name, TreeScene scene, List<Triangle> reference,
+      List<Triangle> fast) {
+    for (int v = 0; v < 6; v++) {
+      View referenceView = draw(referenceViews[v], scene, reference);
+      View fastView = draw(fastViews[v], scene, fast);
+
+      for (int j = 0; j < fastView.height; j++) {
+        for (int i = 0; i < fastView.width; i++) {
+          int sample = j * fastView.width + i;
+          int expected = referenceView.triangle[sample];
+          int actual = fastView.triangle[sample];
+          if (expected == EMPTY && actual == EMPTY)
+            continue;
+
+          String at = name + " from " + fastView;
+          float[] position = (actual != EMPTY ? fastView : referenceView).position(i, j);
+          if (expected == EMPTY || actual == EMPTY
+              || Math.abs(referenceView.depth[sample] - fastView.depth[sample]) > EPSILON) {
+            report(at, "depth", position, describe(fastView, actual, sample) + " instead of "
+                + describe(referenceView, expected, sample));
+          } else if (expected == OPAQUE_BLOCK || actual == OPAQUE_BLOCK) {
+            if (expected != actual) {
+              report(at, "block", position, "a block shows instead of a face");
+            }
+          } else {
+            compareAttributes(at, position, reference.get(expected), fast.get(actual));
+          }
+        }
+      }
+    }
+  }
+
+  private static View draw(View view, TreeScene scene, List<Triangle> triangles) {
+    view.clear();
+    for (int y = 0; y < TreeScene.SIZE_Y; y++) {
+      for (int z = 0; z < TreeScene.SIZE_Z; z++) {
+        for (int x = 0; x < TreeScene.SIZE_X; x++) {
+          if (scene.isCulling(x, y, z)) {
+            view.drawBlock(x, y, z);
+          }
+        }
+      }
+    }
+    for (int i = 0; i < triangles.size(); i++) {
+      view.draw(triangles.get(i), i);
+    }
+    return view;
+  }
+
+  private void compareAttributes(String at, float[] position, Triangle expected,
+      Triangle actual) {
+    if (actual.material != expected.material) {
+      report(at, "texture", position, actual.material + " instead of " + expected.material);
+    }
+    if (actual.sunLight != expected.sunLight || actual.blockLight != expected.blockLight) {
+      report(at, "light", position, actual.sunLight + "/" + actual.blockLight + " instead of "
+          + expected.sunLight + "/" + expected.blockLight);
+    }
+    for (int c = 0; c < 3; c++) {
+      if (Math.abs(actual.color[c] - expected.color[c]) > EPSILON) {
+        report(at, "color", position, "color differs");
+        break;
+      }
+    }
+
+    float[] expectedUv = uv(expected, position);
+    float[] actualUv = uv(actual, position);
+    if (Math.abs(expectedUv[0] - actualUv[0]) > UV_TOLERANCE
+        || Math.abs(expectedUv[1] - actualUv[1]) > UV_TOLERANCE) {
+      report(at, "UV", position, format(actualUv) + " instead of " + format(expectedUv));
+    }
+  }
+
+  /** Counts a mismatching sample, only the first sample of a kind per view is described. */
+  private void report(String at, String kind, float[] position, String detail) {
+    mismatches.computeIfAbsent(at + ": " + kind,
+        k -> new Mismatch(format(position) + " " + detail)).samples++;
+  }
+
+  private static String describe(View view, int triangle, int sample) {
+    if (triangle == EMPTY)
+      return "nothing";
+    return (triangle == OPAQUE_BLOCK ? "block" : "face") + " at depth "
+        + String.format("%.4f", view.depth[sample] * view.sign);
+  }
+
+  /** The UV of the triangle at the position on its plane. */
+  private static float[] uv(Triangle triangle, float[] position) {
+    float[] normal = normal(triangle);
+    int axis = 0;
+    for (int i = 1; i < 3; i++) {
+      if (Math.abs(normal[i]) > Math.abs(normal[axis])) {
+        axis = i;
+      }
+    }
+    int uAxis = (axis + 1) % 3;
+    int vAxis = (axis + 2) % 3;
+    float[] weights = weights(triangle, uAxis, vAxis, position[uAxis], position[vAxis]);
+    float[] uv = triangle.uvs;
+    return new float[] { weights[0] * uv[0] + weights[1] * uv[2] + weights[2] * uv[4],
+        weights[0] * uv[1] + weights[1] * uv[3] + weights[2] * uv[5] };
+  }
+
+  /**
+   * The barycentric weights of the point in the triangle, projected onto the plane of the two axes,
+   * or {@code null} if the point lies outside.
+   */
+  private static float[] weights(Triangle triangle, int uAxis, int vAxis, float u, float v) {
+    float[] p = triangle.positions;
+    float x0 = p[uAxis], y0 = p[vAxis];
+    float x1 = p[3 + uAxis], y1 = p[3 + vAxis];
+    float x2 = p[6 + uAxis], y2 = p[6 + vAxis];
+
+    float det = (y1 - y2) * (x0 - x2) + (x2 - x1) * (y0 - y2);
+    if (Math.abs(det) < EPSILON * EPSILON)
+      return null;
+
+    float w0 = ((y1 - y2) * (u - x2) + (x2 - x1) * (v - y2)) / det;
+    float w1 = ((y2 - y0) * (u - x2) + (x0 - x2) * (v - y2)) / det;
+    float w2 = 1 - w0 - w1;
+    if (w0 < 0 || w1 < 0 || w2 < 0)
+      return null;
+    return new float[] { w0, w1, w2 };
+  }
+
+  private static float[] normal(Triangle triangle) {
+    float[] p = triangle.positions;
+    float ax = p[3] - p[0], ay = p[4] - p[1], az = p[5] - p[2];
+    float bx = p[6] - p[0], by = p[7] - p[1], bz = p[8] - p[2];
+    return new float[] { ay * bz - az * by, az * bx - ax * bz, ax * by - ay * bx };
+  }
+
+  private static String format(float[] values) {
+    StringBuilder builder = new StringBuilder("(");
+    for (int i = 0; i < values.length; i++) {
+      builder.append(i > 0 ? ", " : "").append(String.format("%.4f", values[i]));
+    }
+    return builder.append(')').toString();
+  }
+}
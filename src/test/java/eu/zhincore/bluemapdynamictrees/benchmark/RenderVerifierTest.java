@@ -0,0 +1,29 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+
+/**
+ * Random scenes look the same with the fast paths as with the {@code reference} profile. Only the
+ * full detail merges trunks, the other details are verified without it.
+ */
+class RenderVerifierTest {
+  private static final int SCENES = 200;
+
+  @ParameterizedTest
+  @CsvSource({
+      "FULL, false",
+      "FULL, true",
+      "REDUCED, false",
+      "MINIMAL, false",
+  })
+  void fastPathsMatchReference(RenderProfile.Detail detail, boolean mergeTrunks) {
+    List<String> mismatches = RenderVerifier.verify(detail, mergeTrunks, SCENES, 1);
+
+    assertEquals(List.of(), mismatches, () -> String.join("\n", mismatches));
+  }
+}
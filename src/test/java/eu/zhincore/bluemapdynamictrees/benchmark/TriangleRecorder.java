@@ -0,0 +1,108 @@
+package eu.zhincore.bluemapdynamictrees.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import de.bluecolored.bluemap.core.map.hires.ArrayTileModel;
+
+/**
+ * {@link ArrayTileModel} that keeps a copy of every triangle, with positions moved to the world
+ * position of the rendered block.
+ */
+public final class TriangleRecorder extends ArrayTileModel {
+  private final List<Triangle> triangles = new ArrayList<>();
+  private int originX, originY, originZ;
+
+  public TriangleRecorder(int capacity) {
+    super(capacity);
+  }
+
+  /** The world position of the block rendered next. */
+  public void setOrigin(int x, int y, int z) {
+    originX = x;
+    originY = y;
+    originZ = z;
+  }
+
+  public List<Triangle> getTriangles() {
+    return triangles.subList(0, size());
+  }
+
+  @Override
+  public TriangleRecorder setPositions(int face, float x1, float y1, float z1, float x2, float y2,
+      float z2, float x3, float y3, float z3) {
+    super.setPositions(face, x1, y1, z1, x2, y2, z2, x3, y3, z3);
+    float[] positions = get(face).positions;
+    positions[0] = x1 + originX;
+    positions[1] = y1 + originY;
+    positions[2] = z1 + originZ;
+    positions[3] = x2 + originX;
+    positions[4] = y2 + originY;
+    positions[5] = z2 + originZ;
+    positions[6] = x3 + originX;
+    positions[7] = y3 + originY;
+    positions[8] = z3 + originZ;
+    return this;
+  }
+
+  @Override
+  public TriangleRecorder setUvs(int face, float u1, float v1, float u2, float v2, float u3,
+      float v3) {
+    super.setUvs(face, u1, v1, u2, v2, u3, v3);
+    float[] uvs = get(face).uvs;
+    uvs[0] = u1;
+    uvs[1] = v1;
+    uvs[2] = u2;
+    uvs[3] = v2;
+    uvs[4] = u3;
+    uvs[5] = v3;
+    return this;
+  }
+
+  @Override
+  public TriangleRecorder setColor(int face, float r, float g, float b) {
+    super.setColor(face, r, g, b);
+    float[] color = get(face).color;
+    color[0] = r;
+    color[1] = g;
+    color[2] = b;
+    return this;
+  }
+
+  @Override
+  public TriangleRecorder setSunlight(int face, int sl) {
+    super.setSunlight(face, sl);
+    get(face).sunLight = sl;
+    return this;
+  }
+
+  @Override
+  public TriangleRecorder setBlocklight(int face, int bl) {
+    super.setBlocklight(face, bl);
+    get(face).blockLight = bl;
+    return this;
+  }
+
+  @Override
+  public TriangleRecorder setMaterialIndex(int face, int m) {
+    super.setMaterialIndex(face, m);
+    get(face).material = m;
+    return this;
+  }
+
+  private Triangle get(int face) {
+    while (triangles.size() <= face) {
+      triangles.add(new Triangle());
+    }
+    return triangles.get(face);
+  }
+
+  /** One recorded triangle, positions are {@code x, y, z} of each corner in world blocks. */
+  public static final class Triangle {
+    public final float[] positions = new float[9];
+    public final float[] uvs = new float[6];
+    public final float[] color = new float[3];
+    public int material;
+    public int sunLight;
+    public int blockLight;
+  }
+}
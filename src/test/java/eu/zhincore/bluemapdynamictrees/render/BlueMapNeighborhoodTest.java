@@ -0,0 +1,50 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import eu.zhincore.bluemapdynamictrees.benchmark.Fixtures;
+import eu.zhincore.bluemapdynamictrees.benchmark.InMemoryNeighborhood;
+import eu.zhincore.bluemapdynamictrees.benchmark.SceneBlockNeighborhood;
+import eu.zhincore.bluemapdynamictrees.benchmark.TreeScene;
+
+/**
+ * {@link BlueMapNeighborhood} reads the same blocks, light and culling through BlueMap's
+ * {@link de.bluecolored.bluemap.core.world.block.BlockNeighborhood} as the renderers see in the
+ * in-memory scenes, and the block's chunk comes from BlueMap's own lookup.
+ */
+class BlueMapNeighborhoodTest {
+
+  @Test
+  void readsTheSceneThroughBlueMap() {
+    TreeScene scene = TreeScene.create("forest");
+    SceneBlockNeighborhood block = new SceneBlockNeighborhood(scene, Fixtures.renderSettings());
+    InMemoryNeighborhood expected = new InMemoryNeighborhood(scene);
+    BlueMapNeighborhood actual = new BlueMapNeighborhood();
+    Object chunk = actual.set(block.moveTo(0, 0, 0)).getChunk();
+
+    for (TreeScene.Target target : scene.getTargets()) {
+      int x = target.x(), y = target.y(), z = target.z();
+      String at = x + "," + y + "," + z;
+      expected.moveTo(x, y, z);
+      actual.set(block.moveTo(x, y, z));
+
+      // The whole scene is a single chunk
+      assertSame(chunk, actual.getChunk(), at);
+      assertSame(expected.getBlockState(), actual.getBlockState(), at);
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dz = -1; dz <= 1; dz++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            String offset = at + " + " + dx + "," + dy + "," + dz;
+            assertSame(expected.getBlockStateAt(x + dx, y + dy, z + dz),
+                actual.getBlockStateAt(x + dx, y + dy, z + dz), offset);
+            assertEquals(expected.getPackedLight(dx, dy, dz), actual.getPackedLight(dx, dy, dz),
+                offset);
+            assertEquals(expected.isCulling(dx, dy, dz), actual.isCulling(dx, dy, dz), offset);
+          }
+        }
+      }
+    }
+  }
+}
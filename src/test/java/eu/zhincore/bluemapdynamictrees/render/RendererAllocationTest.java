@@ -0,0 +1,99 @@
+package eu.zhincore.bluemapdynamictrees.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import com.sun.management.ThreadMXBean;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.hires.ArrayTileModel;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.map.hires.TileModelView;
+import de.bluecolored.bluemap.core.util.math.Color;
+import eu.zhincore.bluemapdynamictrees.benchmark.Fixtures;
+import eu.zhincore.bluemapdynamictrees.benchmark.SceneBlockNeighborhood;
+import eu.zhincore.bluemapdynamictrees.benchmark.TreeScene;
+import eu.zhincore.bluemapdynamictrees.config.RenderProfile;
+import eu.zhincore.bluemapdynamictrees.resources.DynamicTreesPack;
+
+/**
+ * Once the caches are filled and the JIT compiled the renderers, rendering branch and root blocks
+ * through the entry point BlueMap calls allocates nothing on the heap. The render thread's
+ * allocated bytes are read before and after the measured passes.
+ */
+class RendererAllocationTest {
+  private static final int CAPACITY = 1 << 16;
+  private static final int WARMUP_PASSES = 2000;
+  private static final int MEASURED_PASSES = 200;
+
+  @ParameterizedTest
+  @CsvSource({
+      "FULL, false",
+      "FULL, true",
+      "REDUCED, false",
+      "MINIMAL, false",
+  })
+  void renderingAllocatesNothing(RenderProfile.Detail detail, boolean mergeTrunks) {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported(), "allocated bytes are not measured");
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    Fixtures.useProfile(new RenderProfile(detail, 3, 3, 0, mergeTrunks,
+        RenderProfile.Leaves.VANILLA, false));
+    TreeScene scene = TreeScene.create("forest");
+    DynamicTreesPack pack = Fixtures.pack(scene);
+    TextureGallery textureGallery = new TextureGallery();
+    RenderSettings renderSettings = Fixtures.renderSettings();
+    Pass pass = new Pass(scene, new BranchModelRenderer(pack, textureGallery, renderSettings),
+        new SurfaceRootModelRenderer(pack, textureGallery, renderSettings), renderSettings);
+
+    for (int i = 0; i < WARMUP_PASSES; i++) {
+      pass.render();
+    }
+
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < MEASURED_PASSES; i++) {
+      pass.render();
+    }
+    long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+    assertEquals(0, allocated, () -> detail + (mergeTrunks ? " merged" : "") + ": "
+        + allocated + " bytes over " + MEASURED_PASSES + " passes of "
+        + pass.targets.length + " blocks");
+  }
+
+  /** Renders every branch and root block of the scene into a model cleared before each pass. */
+  private static final class Pass {
+    private final TreeScene.Target[] targets;
+    private final AbstractDynamicTreeRenderer[] renderers;
+    private final SceneBlockNeighborhood neighborhood;
+    private final ArrayTileModel tileModel = new ArrayTileModel(CAPACITY);
+    private final TileModelView blockModel = new TileModelView(tileModel);
+    private final Color color = new Color();
+
+    private Pass(TreeScene scene, AbstractDynamicTreeRenderer branchRenderer,
+        AbstractDynamicTreeRenderer rootRenderer, RenderSettings renderSettings) {
+      List<TreeScene.Target> sceneTargets = scene.getTargets();
+      this.targets = sceneTargets.toArray(TreeScene.Target[]::new);
+      this.renderers = new AbstractDynamicTreeRenderer[targets.length];
+      for (int i = 0; i < targets.length; i++) {
+        renderers[i] = targets[i].kind() == TreeScene.Kind.ROOT ? rootRenderer : branchRenderer;
+      }
+      this.neighborhood = new SceneBlockNeighborhood(scene, renderSettings);
+    }
+
+    private void render() {
+      tileModel.clear();
+      for (int i = 0; i < targets.length; i++) {
+        TreeScene.Target target = targets[i];
+        blockModel.initialize();
+        // Blocks with a single model never look at the variant
+        renderers[i].render(neighborhood.moveTo(target.x(), target.y(), target.z()), null,
+            blockModel, color);
+      }
+    }
+  }
+}